@@ -9,7 +9,9 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.persistence.EntityManager;
 import javax.swing.*;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
@@ -24,13 +26,19 @@ import nz.ac.auckland.concert.common.dto.SeatDTO;
 import nz.ac.auckland.concert.common.dto.UserDTO;
 import nz.ac.auckland.concert.common.message.Messages;
 import nz.ac.auckland.concert.common.types.PriceBand;
+import nz.ac.auckland.concert.common.types.SeatAllocation;
+import nz.ac.auckland.concert.common.types.SeatNumber;
 import nz.ac.auckland.concert.common.types.SeatRow;
+import nz.ac.auckland.concert.service.catalogue.CatalogueQueries;
 import nz.ac.auckland.concert.service.services.ConcertApplication;
+import nz.ac.auckland.concert.service.services.PersistenceManager;
 import nz.ac.auckland.concert.utility.TheatreLayout;
 
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
 import org.jboss.resteasy.plugins.server.servlet.HttpServletDispatcher;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -136,6 +144,30 @@ public class ConcertServiceTest {
 		Set<PerformerDTO> performers = _service.getPerformers();
 		assertEquals(numberOfPerformers, performers.size());
 	}
+	
+	@Test
+	public void testCatalogueLoadsInFixedNumberOfStatements() {
+		final int numberOfConcerts = 25;
+		final int numberOfPerformers = 20;
+		final int maximumNumberOfStatements = 3;
+		
+		// Count the SQL statements issued while loading the catalogue and
+		// converting it to DTOs, which walks every lazy collection.
+		AtomicInteger statements = new AtomicInteger();
+		EntityManager em = PersistenceManager.instance().createEntityManager();
+		SessionFactory sessionFactory = em.unwrap(Session.class).getSessionFactory();
+		em.close();
+		
+		try (Session session = sessionFactory.withOptions().statementInspector(sql -> {
+			statements.incrementAndGet();
+			return sql;
+		}).openSession()) {
+			assertEquals(numberOfConcerts, CatalogueQueries.loadConcerts(session).size());
+			assertEquals(numberOfPerformers, CatalogueQueries.loadPerformers(session).size());
+		}
+		
+		assertTrue(statements.get() <= maximumNumberOfStatements);
+	}
 
 	@Test
 	public void testCreateUser() {
@@ -252,6 +284,70 @@ public class ConcertServiceTest {
 		}
 	}
 	
+	@Test
+	public void testMakeContiguousReservation() {
+		try {
+			final int numberOfSeatsToBook = 6;
+			
+			UserDTO userDTO = new UserDTO("Bulldog", "123", "Churchill", "Winston");
+			_service.createUser(userDTO);
+			
+			LocalDateTime dateTime = LocalDateTime.of(2017, 2, 24, 17, 00);
+			
+			// Make several reservations so the seats left are fragmented.
+			for(int i = 0; i < 5; i++) {
+				_service.reserveSeats(new ReservationRequestDTO(numberOfSeatsToBook, PriceBand.PriceBandA, 1L, dateTime));
+			}
+			
+			ReservationRequestDTO request = new ReservationRequestDTO(numberOfSeatsToBook, PriceBand.PriceBandA, 1L, 
+					dateTime, SeatAllocation.Contiguous);
+			ReservationDTO reservation = _service.reserveSeats(request);
+			assertEquals(request, reservation.getReservationRequest());
+			
+			// Check that the seats reserved are adjacent seats in a single row.
+			Set<SeatDTO> reservedSeats = reservation.getSeats();
+			assertEquals(numberOfSeatsToBook, reservedSeats.size());
+			
+			SeatRow row = reservedSeats.iterator().next().getRow();
+			int lowest = Integer.MAX_VALUE;
+			int highest = Integer.MIN_VALUE;
+			for(SeatDTO seat : reservedSeats) {
+				assertEquals(row, seat.getRow());
+				lowest = Math.min(lowest, seat.getNumber().intValue());
+				highest = Math.max(highest, seat.getNumber().intValue());
+			}
+			assertEquals(numberOfSeatsToBook - 1, highest - lowest);
+			assertTrue(TheatreLayout.getRowsForPriceBand(PriceBand.PriceBandA).contains(row));
+			
+		} catch(ServiceException e) {
+			fail();
+		}
+	}
+	
+	@Test
+	public void testMakeBestAvailableReservation() {
+		try {
+			UserDTO userDTO = new UserDTO("Bulldog", "123", "Churchill", "Winston");
+			_service.createUser(userDTO);
+			
+			LocalDateTime dateTime = LocalDateTime.of(2017, 2, 24, 17, 00);
+			ReservationRequestDTO request = new ReservationRequestDTO(3, PriceBand.PriceBandB, 1L, 
+					dateTime, SeatAllocation.BestAvailable);
+			ReservationDTO reservation = _service.reserveSeats(request);
+			
+			// Row A is the front row of price band B and has 19 seats, so the
+			// best seats are the three in the middle of it.
+			Set<SeatDTO> expectedSeats = new HashSet<>();
+			expectedSeats.add(new SeatDTO(SeatRow.A, new SeatNumber(9)));
+			expectedSeats.add(new SeatDTO(SeatRow.A, new SeatNumber(10)));
+			expectedSeats.add(new SeatDTO(SeatRow.A, new SeatNumber(11)));
+			assertEquals(expectedSeats, reservation.getSeats());
+			
+		} catch(ServiceException e) {
+			fail();
+		}
+	}
+	
 	@Test
 	public void testMakeReservationWithBadRequest() {
 		try {
@@ -347,6 +443,53 @@ public class ConcertServiceTest {
 		assertEquals(reservation.getSeats(), bookingDTO.getSeats());
 		assertEquals(PriceBand.PriceBandC, bookingDTO.getPriceBand());
 	}	
+
+	@Test
+	public void testConfirmReservationOnlyBooksReservedSeats() {
+		ConcertService other = new DefaultService();
+		createUserWithCreditCard(_service, new UserDTO("Bulldog", "123", "Churchill", "Winston"));
+		createUserWithCreditCard(other, new UserDTO("Iron Lady", "456", "Thatcher", "Margaret"));
+
+		// Both users reserve seats for the same concert date and price band.
+		LocalDateTime dateTime = LocalDateTime.of(2017, 2, 24, 17, 00);
+		ReservationRequestDTO request = new ReservationRequestDTO(2, PriceBand.PriceBandC, 1L, dateTime);
+		ReservationDTO reservation = _service.reserveSeats(request);
+		ReservationDTO otherReservation = other.reserveSeats(request);
+
+		// The other user tries to confirm their reservation with this user's
+		// seats added to it.
+		Set<SeatDTO> seats = new HashSet<>(otherReservation.getSeats());
+		seats.addAll(reservation.getSeats());
+		other.confirmReservation(new ReservationDTO(otherReservation.getId(),
+				otherReservation.getReservationRequest(), seats, otherReservation.getExpiryTimeInSeconds(),
+				otherReservation.getHoldToken()));
+
+		assertEquals(otherReservation.getSeats(), other.getBookings().iterator().next().getSeats());
+
+		// This user's seats are still held for them.
+		_service.confirmReservation(reservation);
+		assertEquals(reservation.getSeats(), _service.getBookings().iterator().next().getSeats());
+	}
+
+	@Test
+	public void testConfirmReservationMadeForAnotherUser() {
+		ConcertService other = new DefaultService();
+		createUserWithCreditCard(_service, new UserDTO("Bulldog", "123", "Churchill", "Winston"));
+		createUserWithCreditCard(other, new UserDTO("Iron Lady", "456", "Thatcher", "Margaret"));
+
+		LocalDateTime dateTime = LocalDateTime.of(2017, 2, 24, 17, 00);
+		ReservationRequestDTO request = new ReservationRequestDTO(2, PriceBand.PriceBandC, 1L, dateTime);
+		ReservationDTO reservation = _service.reserveSeats(request);
+
+		try {
+			other.confirmReservation(reservation);
+			fail();
+		} catch(ServiceException e) {
+			assertEquals(Messages.EXPIRED_RESERVATION, e.getMessage());
+		} finally {
+			assertTrue(other.getBookings().isEmpty());
+		}
+	}
 	
 	@Test
 	public void testConfirmBookingWithExpiredReservation() {
@@ -426,4 +569,10 @@ public class ConcertServiceTest {
 			assertEquals(Messages.UNAUTHENTICATED_REQUEST, e.getMessage());
 		} 
 	}
+
+	private static void createUserWithCreditCard(ConcertService service, UserDTO userDTO) {
+		service.createUser(userDTO);
+		service.registerCreditCard(new CreditCardDTO(CreditCardDTO.Type.Visa,
+				userDTO.getFirstname() + " " + userDTO.getLastname(), "4929-1500-0055-9544", LocalDate.of(2019, 7, 31)));
+	}
 }
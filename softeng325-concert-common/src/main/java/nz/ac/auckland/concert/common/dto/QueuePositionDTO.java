@@ -0,0 +1,127 @@
+package nz.ac.auckland.concert.common.dto;
+
+import java.time.LocalDateTime;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * DTO class to represent a user's place in the waiting room for a concert
+ * date. When the Web service's waiting room is enabled, a user must join the
+ * waiting room and wait to be admitted before making a reservation.
+ *
+ * A QueuePositionDTO describes a place in the waiting room in terms of:
+ * _concertId            the identity of the concert.
+ * _date                 the date/time of the concert.
+ * _position             the user's position in the queue, starting at 1.
+ * _peopleAhead          how many users ahead of the user are still waiting.
+ * _admitted             whether the user has been admitted, and so may make
+ *                       a reservation.
+ * _estimatedWaitSeconds roughly how long until the user is admitted.
+ * _token                a signed token identifying the place, used to poll
+ *                       the place's status and sent as a cookie when making
+ *                       a reservation.
+ *
+ * Only _concertId and _date need to be set when joining the waiting room.
+ *
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+public class QueuePositionDTO {
+
+	@XmlElement
+	private Long _concertId;
+
+	@XmlElement
+	private LocalDateTime _date;
+
+	@XmlElement
+	private long _position;
+
+	@XmlElement
+	private long _peopleAhead;
+
+	@XmlElement
+	private boolean _admitted;
+
+	@XmlElement
+	private long _estimatedWaitSeconds;
+
+	@XmlElement
+	private String _token;
+
+	public QueuePositionDTO() {}
+
+	public QueuePositionDTO(Long concertId, LocalDateTime date) {
+		_concertId = concertId;
+		_date = date;
+	}
+
+	public QueuePositionDTO(Long concertId, LocalDateTime date, long position, long peopleAhead,
+			boolean admitted, long estimatedWaitSeconds, String token) {
+		_concertId = concertId;
+		_date = date;
+		_position = position;
+		_peopleAhead = peopleAhead;
+		_admitted = admitted;
+		_estimatedWaitSeconds = estimatedWaitSeconds;
+		_token = token;
+	}
+
+	public Long getConcertId() {
+		return _concertId;
+	}
+
+	public LocalDateTime getDate() {
+		return _date;
+	}
+
+	public long getPosition() {
+		return _position;
+	}
+
+	public long getPeopleAhead() {
+		return _peopleAhead;
+	}
+
+	public boolean isAdmitted() {
+		return _admitted;
+	}
+
+	public long getEstimatedWaitSeconds() {
+		return _estimatedWaitSeconds;
+	}
+
+	public String getToken() {
+		return _token;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof QueuePositionDTO))
+            return false;
+        if (obj == this)
+            return true;
+
+        QueuePositionDTO rhs = (QueuePositionDTO) obj;
+        return new EqualsBuilder().
+            append(_concertId, rhs._concertId).
+            append(_date, rhs._date).
+            append(_position, rhs._position).
+            isEquals();
+	}
+
+	@Override
+	public int hashCode() {
+		return new HashCodeBuilder(17, 31).
+	            append(_concertId).
+	            append(_date).
+	            append(_position).
+	            hashCode();
+	}
+}
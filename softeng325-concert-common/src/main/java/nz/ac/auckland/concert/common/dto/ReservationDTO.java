@@ -22,6 +22,12 @@ import javax.xml.bind.annotation.*;
  *                     reservation was requested.
  * _seats              the seats that have been reserved (represented as a Set
  *                     of SeatDTO objects).
+ * _expiryTimeInSeconds how long after the reservation was made it expires,
+ *                     which the Web service varies with demand for the
+ *                     concert. A client should confirm within this time.
+ * _holdToken          a signed token describing the held seats, when the Web
+ *                     service doesn't record reservations until they are
+ *                     confirmed. Null otherwise.
  *
  */
 @XmlRootElement
@@ -36,13 +42,30 @@ public class ReservationDTO {
 
 	@XmlElement
 	private Set<SeatDTO> _seats;
+
+	@XmlElement
+	private Integer _expiryTimeInSeconds;
+
+	@XmlElement
+	private String _holdToken;
 	
 	public ReservationDTO() {}
 	
 	public ReservationDTO(Long id, ReservationRequestDTO request, Set<SeatDTO> seats) {
+		this(id, request, seats, null, null);
+	}
+
+	public ReservationDTO(Long id, ReservationRequestDTO request, Set<SeatDTO> seats, Integer expiryTimeInSeconds) {
+		this(id, request, seats, expiryTimeInSeconds, null);
+	}
+
+	public ReservationDTO(Long id, ReservationRequestDTO request, Set<SeatDTO> seats, Integer expiryTimeInSeconds,
+			String holdToken) {
 		_id = id;
 		_request = request;
 		_seats = new HashSet<SeatDTO>(seats);
+		_expiryTimeInSeconds = expiryTimeInSeconds;
+		_holdToken = holdToken;
 	}
 	
 	public Long getId() {
@@ -56,6 +79,14 @@ public class ReservationDTO {
 	public Set<SeatDTO> getSeats() {
 		return Collections.unmodifiableSet(_seats);
 	}
+
+	public Integer getExpiryTimeInSeconds() {
+		return _expiryTimeInSeconds;
+	}
+
+	public String getHoldToken() {
+		return _holdToken;
+	}
 	
 	@Override
 	public boolean equals(Object obj) {
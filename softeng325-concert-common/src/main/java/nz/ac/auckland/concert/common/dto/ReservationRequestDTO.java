@@ -3,6 +3,7 @@ package nz.ac.auckland.concert.common.dto;
 import java.time.LocalDateTime;
 
 import nz.ac.auckland.concert.common.types.PriceBand;
+import nz.ac.auckland.concert.common.types.SeatAllocation;
 
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -21,6 +22,8 @@ import javax.xml.bind.annotation.XmlRootElement;
  * _concertId     the identity of the concert for which to reserve seats.
  * _date          the date/time of the concert for which seats are to be 
  *                reserved.
+ * _allocation    how the seats are to be chosen (optional, defaults to
+ *                SeatAllocation.Any).
  *
  */
 @XmlRootElement
@@ -38,14 +41,23 @@ public class ReservationRequestDTO {
 
 	@XmlElement
 	private LocalDateTime _date;
+
+	@XmlElement
+	private SeatAllocation _allocation;
 	
 	public ReservationRequestDTO() {}
 	
 	public ReservationRequestDTO(int numberOfSeats, PriceBand seatType, Long concertId, LocalDateTime date) {
+		this(numberOfSeats, seatType, concertId, date, SeatAllocation.Any);
+	}
+
+	public ReservationRequestDTO(int numberOfSeats, PriceBand seatType, Long concertId, LocalDateTime date,
+			SeatAllocation allocation) {
 		_numberOfSeats = numberOfSeats;
 		_seatType = seatType;
 		_concertId = concertId;
 		_date = date;
+		_allocation = allocation;
 	}
 	
 	public int getNumberOfSeats() {
@@ -63,6 +75,10 @@ public class ReservationRequestDTO {
 	public LocalDateTime getDate() {
 		return _date;
 	}
+
+	public SeatAllocation getAllocation() {
+		return _allocation == null ? SeatAllocation.Any : _allocation;
+	}
 	
 	@Override
 	public boolean equals(Object obj) {
@@ -77,6 +93,7 @@ public class ReservationRequestDTO {
             append(_seatType, rhs._seatType).
             append(_concertId, rhs._concertId).
             append(_date, rhs._date).
+            append(getAllocation(), rhs.getAllocation()).
             isEquals();
 	}
 	
@@ -87,6 +104,7 @@ public class ReservationRequestDTO {
 	            append(_seatType).
 	            append(_concertId).
 	            append(_date).
+	            append(getAllocation()).
 	            hashCode();
 	}
 }
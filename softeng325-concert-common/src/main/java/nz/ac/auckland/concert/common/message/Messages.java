@@ -16,10 +16,13 @@ public class Messages {
 	
 	public static final String UNAUTHENTICATED_REQUEST = "Unable to process request - missing authentication token";
 	public static final String BAD_AUTHENTICATON_TOKEN = "Unable to process request - unrecognised authentication token";
+	public static final String AUTHENTICATED_USER_MISMATCH = "Unable to process request - authentication token is for a different user";
 	
 	public static final String RESERVATION_REQUEST_WITH_MISSING_FIELDS = "Unable to process reservation - missing fields in the request";
 	public static final String CONCERT_NOT_SCHEDULED_ON_RESERVATION_DATE = "Unable to process reservation - concert isn't scheduled on spcecified date";
 	public static final String INSUFFICIENT_SEATS_AVAILABLE_FOR_RESERVATION = "Unable to make reservation - seats of the required type are not available";
+	public static final String NOT_ADMITTED_FROM_WAITING_ROOM = "Unable to make reservation - not yet admitted from the waiting room";
+	public static final String BAD_WAITING_ROOM_TOKEN = "Unable to process request - unrecognised waiting room token";
 	
 	public static final String CREDIT_CARD_NOT_REGISTERED = "Unable to confirm reservation - credit card not registered";
 	public static final String EXPIRED_RESERVATION = "Unable to confirm reservation - reservation has expired";
@@ -0,0 +1,16 @@
+package nz.ac.auckland.concert.common.types;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Enumerated type for choosing how seats are allocated to a reservation.
+ * Any:        any available seats in the price band.
+ * Contiguous: adjacent seats in a single row of the price band.
+ * BestAvailable: the available seats closest to the front and centre of the
+ *                price band.
+ *
+ */
+@XmlRootElement
+public enum SeatAllocation {
+	Any, Contiguous, BestAvailable;
+}
@@ -10,6 +10,11 @@ public class Config {
      */
     public static final String CLIENT_COOKIE = "clientId";
 
+    /**
+     * Name of a cookie holding a client's waiting room token, sent when making a reservation.
+     */
+    public static final String ADMISSION_COOKIE = "admissionToken";
+
     public static final int RESERVATION_EXPIRY_TIME_IN_SECONDS = 5;
 
 }
@@ -18,6 +18,10 @@ public class ServiceURI {
 
     public static final String BILLING = "/users/{username}/billing";
 
+    public static final String WAITING_ROOM = "/users/{username}/waitingroom";
+
+    public static final String WAITING_ROOM_POSITION = "/waitingroom/{token}";
+
     public static final String authenticateUser(String username) {
         return AUTHENTICATE_USER.replace("{username}", username);
     }
@@ -37,4 +41,12 @@ public class ServiceURI {
     public static final String billing(String username) {
         return BILLING.replace("{username}", "" + username);
     }
+
+    public static final String waitingRoom(String username) {
+        return WAITING_ROOM.replace("{username}", "" + username);
+    }
+
+    public static final String waitingRoomPosition(String token) {
+        return WAITING_ROOM_POSITION.replace("{token}", "" + token);
+    }
 }
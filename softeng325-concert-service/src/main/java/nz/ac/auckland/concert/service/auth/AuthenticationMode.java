@@ -0,0 +1,91 @@
+package nz.ac.auckland.concert.service.auth;
+
+import nz.ac.auckland.concert.service.domain.jpa.User;
+
+import javax.ws.rs.core.NewCookie;
+import java.util.UUID;
+
+import static nz.ac.auckland.concert.utility.Config.CLIENT_COOKIE;
+
+/**
+ * Enumerated type for the ways the Web service can issue and check authentication tokens. The mode is chosen with
+ * ServiceConfig.AUTHENTICATION_MODE.
+ *
+ * Indexed    tokens are random UUIDs stored with the user, and are checked against the in-memory TokenIndex.
+ * Signed     tokens are signed by TokenSigner and carry the username and an expiry, so they are checked without any
+ *            lookup and any service node can check them. A new token is issued each time a user authenticates.
+ */
+public enum AuthenticationMode {
+
+    Indexed {
+        @Override
+        public NewCookie createToken(String username) {
+            return new NewCookie(CLIENT_COOKIE, UUID.randomUUID().toString());
+        }
+
+        @Override
+        public void tokenIssued(NewCookie token, String username) {
+            TokenIndex.instance().put(token, username);
+        }
+
+        @Override
+        public NewCookie reissueToken(User user) {
+            return user.getAuthenticationToken();
+        }
+
+        @Override
+        public String getUsername(String token) {
+            return TokenIndex.instance().getUsername(token);
+        }
+    },
+
+    Signed {
+        @Override
+        public NewCookie createToken(String username) {
+            return new NewCookie(CLIENT_COOKIE, TokenSigner.instance().sign(username));
+        }
+
+        @Override
+        public void tokenIssued(NewCookie token, String username) {
+            // Signed tokens carry everything needed to check them
+        }
+
+        @Override
+        public NewCookie reissueToken(User user) {
+            return createToken(user.getUsername());
+        }
+
+        @Override
+        public String getUsername(String token) {
+            return TokenSigner.instance().verify(token);
+        }
+    };
+
+    /**
+     * Creates a token for a new user
+     * @param username the user
+     * @return the token
+     */
+    public abstract NewCookie createToken(String username);
+
+    /**
+     * Starts accepting a token once it has been given to a user
+     * @param token the token
+     * @param username the user the token was given to
+     */
+    public abstract void tokenIssued(NewCookie token, String username);
+
+    /**
+     * Returns the token to give a user who has just authenticated. Must be followed by a call to tokenIssued().
+     * @param user the user
+     * @return the token
+     */
+    public abstract NewCookie reissueToken(User user);
+
+    /**
+     * Checks a token
+     * @param token value of the token
+     * @return the username the token was issued to, or null if the token isn't accepted
+     */
+    public abstract String getUsername(String token);
+}
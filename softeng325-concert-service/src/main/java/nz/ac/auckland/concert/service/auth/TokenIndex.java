@@ -0,0 +1,91 @@
+package nz.ac.auckland.concert.service.auth;
+
+import nz.ac.auckland.concert.service.util.ServiceConfig;
+
+import javax.ws.rs.core.NewCookie;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Singleton class that maps authentication tokens to the usernames they were issued to, so requests can be
+ * authenticated without querying the database. The index starts out empty, as every user is deleted at startup, and
+ * is kept up to date as users are created and authenticated.
+ *
+ * A token stays in the index for ServiceConfig.AUTHENTICATION_TOKEN_TTL_SECONDS after it was last issued;
+ * after that it is no longer accepted until the user authenticates again. Expired tokens are swept out of the index
+ * periodically.
+ */
+public class TokenIndex {
+
+    private static final TokenIndex _instance = new TokenIndex(ServiceConfig.AUTHENTICATION_TOKEN_TTL_SECONDS);
+
+    private final long _ttlMillis;
+
+    private final ConcurrentMap<String, Entry> _entries = new ConcurrentHashMap<>();
+
+    protected TokenIndex(long ttlSeconds) {
+        _ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-index-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::removeExpired, ttlSeconds, ttlSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Removes every token from the index. Must be called whenever users are removed from the database.
+     */
+    public void clear() {
+        _entries.clear();
+    }
+
+    /**
+     * Records that a token has been issued to a user, restarting its time to live
+     * @param token the authentication token
+     * @param username the user the token was issued to
+     */
+    public void put(NewCookie token, String username) {
+        _entries.put(token.getValue(), new Entry(username, System.currentTimeMillis() + _ttlMillis));
+    }
+
+    /**
+     * Looks up the user a token was issued to
+     * @param token value of the authentication token
+     * @return the user's username, or null if the token is unknown or has expired
+     */
+    public String getUsername(String token) {
+        Entry entry = _entries.get(token);
+        if (entry == null) {
+            return null;
+        }
+        if (entry._expiresAt < System.currentTimeMillis()) {
+            _entries.remove(token, entry);
+            return null;
+        }
+        return entry._username;
+    }
+
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        _entries.values().removeIf(entry -> entry._expiresAt < now);
+    }
+
+    public static TokenIndex instance() {
+        return _instance;
+    }
+
+    private static class Entry {
+        private final String _username;
+        private final long _expiresAt;
+
+        Entry(String username, long expiresAt) {
+            _username = username;
+            _expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package nz.ac.auckland.concert.service.auth;
+
+import nz.ac.auckland.concert.service.util.ServiceConfig;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Singleton class that issues and verifies self-contained tokens. A token carries a subject (for authentication
+ * tokens, the username) and an expiry time, signed with HMAC-SHA256:
+ *
+ *     base64url(subject) "." expiry (epoch seconds) "." key id "." base64url(signature)
+ *
+ * Verifying a token needs no lookup, so any service node holding the same keys can authenticate any request. Each
+ * token is signed for a purpose, which is covered by the signature but not carried in the token, so a token issued
+ * for one purpose (e.g. a seat hold) is never accepted for another (e.g. authentication).
+ *
+ * Keys are read from ServiceConfig.AUTHENTICATION_KEYS. The first key signs new tokens and every key is accepted when
+ * verifying, so a key can be rotated by putting a new key first and dropping the old one once the tokens it signed
+ * have expired. Keys can also be rotated at run time with rotate() and retire(). If no keys are configured, a random
+ * key is generated, which only suits a single node.
+ */
+public class TokenSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final String SEPARATOR = ".";
+    private static final String AUTHENTICATION = "authentication";
+
+    private static final TokenSigner _instance = new TokenSigner(ServiceConfig.AUTHENTICATION_KEYS,
+            ServiceConfig.AUTHENTICATION_TOKEN_TTL_SECONDS);
+
+    private final long _ttlSeconds;
+
+    // Keys accepted for verification, by key id. Replaced rather than modified, so readers need no locking.
+    private volatile Map<String, SecretKeySpec> _keys;
+
+    // Id of the key that signs new tokens
+    private volatile String _currentKeyId;
+
+    /**
+     * @param keys comma-separated list of keyId:base64Secret pairs, current key first, or null to generate a key
+     * @param ttlSeconds how long an issued token is valid for
+     */
+    protected TokenSigner(String keys, long ttlSeconds) {
+        _ttlSeconds = ttlSeconds;
+
+        Map<String, SecretKeySpec> parsed = new LinkedHashMap<>();
+        if (keys == null || keys.trim().isEmpty()) {
+            byte[] secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+            parsed.put("generated", new SecretKeySpec(secret, ALGORITHM));
+        } else {
+            for (String key : keys.split(",")) {
+                String[] parts = key.trim().split(":", 2);
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Authentication keys must be given as keyId:base64Secret");
+                }
+                parsed.put(parts[0], new SecretKeySpec(Base64.getDecoder().decode(parts[1]), ALGORITHM));
+            }
+        }
+        _keys = parsed;
+        _currentKeyId = parsed.keySet().iterator().next();
+    }
+
+    /**
+     * Issues a token for a user, signed with the current key
+     * @param username the user the token is for
+     * @return value of the token
+     */
+    public String sign(String username) {
+        return sign(AUTHENTICATION, username, System.currentTimeMillis() / 1000 + _ttlSeconds);
+    }
+
+    /**
+     * Verifies an authentication token's signature and expiry
+     * @param token value of the token
+     * @return the username carried by the token, or null if the token is malformed, has been tampered with, was
+     * signed by an unknown key or has expired
+     */
+    public String verify(String token) {
+        return verify(AUTHENTICATION, token);
+    }
+
+    /**
+     * Issues a token for a purpose, signed with the current key
+     * @param purpose what the token may be used for
+     * @param subject what the token is about
+     * @param expiry when the token expires, in epoch seconds
+     * @return value of the token
+     */
+    public String sign(String purpose, String subject, long expiry) {
+        String keyId = _currentKeyId;
+        String payload = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                subject.getBytes(StandardCharsets.UTF_8)) + SEPARATOR + expiry + SEPARATOR + keyId;
+        return payload + SEPARATOR + Base64.getUrlEncoder().withoutPadding().encodeToString(
+                mac(keyId, purpose, payload));
+    }
+
+    /**
+     * Verifies a token's signature, purpose and expiry
+     * @param purpose what the token is being used for
+     * @param token value of the token
+     * @return the subject carried by the token, or null if the token is malformed, has been tampered with, was
+     * signed for another purpose or by an unknown key, or has expired
+     */
+    public String verify(String purpose, String token) {
+        String[] parts = token.split("\\" + SEPARATOR);
+        if (parts.length != 4 || !_keys.containsKey(parts[2])) {
+            return null;
+        }
+
+        try {
+            String payload = parts[0] + SEPARATOR + parts[1] + SEPARATOR + parts[2];
+            byte[] signature = Base64.getUrlDecoder().decode(parts[3]);
+            if (!MessageDigest.isEqual(signature, mac(parts[2], purpose, payload))) {
+                return null;
+            }
+            if (Long.parseLong(parts[1]) < System.currentTimeMillis() / 1000) {
+                return null;
+            }
+            return new String(Base64.getUrlDecoder().decode(parts[0]), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Makes a new key the one that signs tokens. Tokens signed by the previous keys are still accepted.
+     * @param keyId id of the new key
+     * @param secret the new key's secret
+     */
+    public synchronized void rotate(String keyId, byte[] secret) {
+        Map<String, SecretKeySpec> keys = new LinkedHashMap<>(_keys);
+        keys.put(keyId, new SecretKeySpec(secret, ALGORITHM));
+        _keys = keys;
+        _currentKeyId = keyId;
+    }
+
+    /**
+     * Stops accepting tokens signed by a key. The current key can't be retired.
+     * @param keyId id of the key
+     */
+    public synchronized void retire(String keyId) {
+        if (keyId.equals(_currentKeyId)) {
+            throw new IllegalArgumentException("The current signing key can't be retired");
+        }
+        Map<String, SecretKeySpec> keys = new LinkedHashMap<>(_keys);
+        keys.remove(keyId);
+        _keys = keys;
+    }
+
+    private byte[] mac(String keyId, String purpose, String payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(_keys.get(keyId));
+            mac.update(purpose.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static TokenSigner instance() {
+        return _instance;
+    }
+}
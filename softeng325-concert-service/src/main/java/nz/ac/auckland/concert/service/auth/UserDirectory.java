@@ -0,0 +1,101 @@
+package nz.ac.auckland.concert.service.auth;
+
+import nz.ac.auckland.concert.service.domain.jpa.User;
+
+import javax.persistence.EntityManager;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Singleton class that caches users by username, so logging in and checking a user's details doesn't need a database
+ * query. A user missing from the directory is loaded by primary key and cached; users are added to the directory as
+ * they are created (write-through), and removed whenever something that is cached about them changes.
+ *
+ * Cached users are detached copies holding the user's details and credit card but not their bookings. They must be
+ * treated as read-only; changes go through a managed User, followed by a call to invalidate().
+ *
+ * Each user hashes to one of a fixed number of generation counters, which invalidate() and clear() advance. A user
+ * loaded from the database is only cached if their counter hasn't moved since before the load, so a load that races
+ * with a change can't cache the user's old details after the change has invalidated them.
+ */
+public class UserDirectory {
+
+    private static final UserDirectory _instance = new UserDirectory();
+
+    private static final int GENERATIONS = 64;
+
+    private final ConcurrentMap<String, User> _users = new ConcurrentHashMap<>();
+    private final AtomicLongArray _generations = new AtomicLongArray(GENERATIONS);
+
+    protected UserDirectory() {}
+
+    /**
+     * Looks a user up, loading them from the database if they aren't cached
+     * @param em used to load the user if necessary
+     * @param username the user's username
+     * @return a read-only copy of the user, or null if there is no such user
+     */
+    public User get(EntityManager em, String username) {
+        User user = _users.get(username);
+        if (user == null) {
+            int index = generationIndex(username);
+            long generation = _generations.get(index);
+            User stored = em.find(User.class, username);
+            if (stored == null) {
+                return null;
+            }
+
+            // Don't replace a copy cached by a concurrent writer, and don't cache a copy loaded before the user was
+            // invalidated. The generation is checked under the map's lock for the user, which invalidate() also takes
+            // after advancing the generation.
+            User copy = copyOf(stored);
+            User cached = _users.computeIfAbsent(username,
+                    k -> _generations.get(index) == generation ? copy : null);
+            user = cached != null ? cached : copy;
+        }
+        return user;
+    }
+
+    /**
+     * Adds a user that has just been stored in the database
+     * @param user the user
+     */
+    public void put(User user) {
+        _users.put(user.getUsername(), copyOf(user));
+    }
+
+    /**
+     * Removes a user whose details have changed, so they're reloaded on next use
+     * @param username the user's username
+     */
+    public void invalidate(String username) {
+        _generations.incrementAndGet(generationIndex(username));
+        _users.remove(username);
+    }
+
+    /**
+     * Removes every user from the directory
+     */
+    public void clear() {
+        for (int i = 0; i < GENERATIONS; i++) {
+            _generations.incrementAndGet(i);
+        }
+        _users.clear();
+    }
+
+    private static int generationIndex(String username) {
+        return Math.floorMod(username.hashCode(), GENERATIONS);
+    }
+
+    private static User copyOf(User user) {
+        User copy = new User(user.getUsername(), user.getPassword(), user.getLastname(), user.getFirstname(),
+                user.getAuthenticationToken());
+        copy.setCreditCard(user.getCreditCard());
+        return copy;
+    }
+
+    public static UserDirectory instance() {
+        return _instance;
+    }
+}
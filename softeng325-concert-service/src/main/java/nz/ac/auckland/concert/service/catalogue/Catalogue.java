@@ -0,0 +1,60 @@
+package nz.ac.auckland.concert.service.catalogue;
+
+import nz.ac.auckland.concert.service.services.PersistenceManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Singleton class that holds the current CatalogueSnapshot. The snapshot is taken the first time it's needed and
+ * reused until the catalogue is invalidated, which is expected to be rare: concerts and performers are only ever
+ * changed outside of the Web service.
+ */
+public class Catalogue {
+
+    private static final Catalogue _instance = new Catalogue();
+
+    private final AtomicLong _version = new AtomicLong();
+
+    private volatile CatalogueSnapshot _snapshot;
+
+    protected Catalogue() {}
+
+    /**
+     * Returns the current snapshot, taking one if necessary
+     * @param loader takes a snapshot, given the version number to give it
+     * @return the snapshot
+     */
+    public CatalogueSnapshot getSnapshot(LongFunction<CatalogueSnapshot> loader) {
+        CatalogueSnapshot snapshot = _snapshot;
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = _snapshot;
+                if (snapshot == null) {
+                    long version = _version.get();
+                    snapshot = loader.apply(version);
+
+                    // Only publish the snapshot if the catalogue wasn't invalidated while it was being taken
+                    if (_version.get() == version) {
+                        _snapshot = snapshot;
+                    }
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Discards the current snapshot, and evicts the catalogue from the second-level cache, so the next request reads
+     * the catalogue from the database. Must be called whenever concerts or performers change.
+     */
+    public void invalidate() {
+        _version.incrementAndGet();
+        PersistenceManager.instance().evictCatalogue();
+        _snapshot = null;
+    }
+
+    public static Catalogue instance() {
+        return _instance;
+    }
+}
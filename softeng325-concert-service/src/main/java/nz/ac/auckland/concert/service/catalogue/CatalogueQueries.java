@@ -0,0 +1,51 @@
+package nz.ac.auckland.concert.service.catalogue;
+
+import nz.ac.auckland.concert.common.dto.ConcertDTO;
+import nz.ac.auckland.concert.common.dto.PerformerDTO;
+import nz.ac.auckland.concert.service.domain.jpa.Concert;
+import nz.ac.auckland.concert.service.domain.jpa.Performer;
+import nz.ac.auckland.concert.service.mapper.ConcertMapper;
+import nz.ac.auckland.concert.service.mapper.PerformerMapper;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Loads the catalogue with fetch joins, so the mappers never trigger a lazy load. The whole catalogue takes three SQL
+ * statements however many concerts and performers there are: concerts with their dates and prices, concerts with
+ * their performers, and performers with their concerts. Concert collections are fetched in two queries rather than
+ * one to keep the joined result from growing as dates x prices x performers.
+ */
+public class CatalogueQueries {
+
+    /**
+     * Loads every concert
+     * @param em
+     * @return the concerts as data transfer objects
+     */
+    public static Set<ConcertDTO> loadConcerts(EntityManager em) {
+
+        // Both queries return the same Concert instances, each initialising different collections
+        em.createNamedQuery(Concert.FIND_ALL_WITH_DATES_AND_PRICES, Concert.class).getResultList();
+        List<Concert> concerts = em.createNamedQuery(Concert.FIND_ALL_WITH_PERFORMERS, Concert.class)
+                .getResultList();
+
+        return ConcertMapper.toDTO(concerts);
+    }
+
+    /**
+     * Loads every performer
+     * @param em
+     * @return the performers as data transfer objects
+     */
+    public static Set<PerformerDTO> loadPerformers(EntityManager em) {
+        List<Performer> performers = em.createNamedQuery(Performer.FIND_ALL_WITH_CONCERTS, Performer.class)
+                .getResultList();
+
+        return PerformerMapper.toDTO(performers);
+    }
+
+    // This is utility class, so hide the constructor to prevent instantiation.
+    private CatalogueQueries() {}
+}
@@ -0,0 +1,101 @@
+package nz.ac.auckland.concert.service.catalogue;
+
+import nz.ac.auckland.concert.common.dto.ConcertDTO;
+import nz.ac.auckland.concert.common.dto.PerformerDTO;
+
+import javax.ws.rs.core.EntityTag;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Immutable copy of the concerts and performers on offer, taken at one point in time. Besides the DTOs, a snapshot
+ * holds each response body already marshalled, so serving the catalogue is just a matter of writing bytes.
+ */
+public class CatalogueSnapshot {
+
+    private final long _version;
+    private final Date _lastModified;
+    private final Set<ConcertDTO> _concerts;
+    private final Set<PerformerDTO> _performers;
+    private final Representation _concertsRepresentation;
+    private final Representation _performersRepresentation;
+
+    public CatalogueSnapshot(long version, Date lastModified, Set<ConcertDTO> concerts, byte[] concertsBody,
+                             Set<PerformerDTO> performers, byte[] performersBody) {
+        _version = version;
+        _lastModified = lastModified;
+        _concerts = Collections.unmodifiableSet(concerts);
+        _performers = Collections.unmodifiableSet(performers);
+        _concertsRepresentation = new Representation(concertsBody);
+        _performersRepresentation = new Representation(performersBody);
+    }
+
+    public long getVersion() {
+        return _version;
+    }
+
+    /**
+     * @return when the snapshot was taken, to the second (the precision of HTTP dates)
+     */
+    public Date getLastModified() {
+        return _lastModified;
+    }
+
+    public Set<ConcertDTO> getConcerts() {
+        return _concerts;
+    }
+
+    public Set<PerformerDTO> getPerformers() {
+        return _performers;
+    }
+
+    public Representation getConcertsRepresentation() {
+        return _concertsRepresentation;
+    }
+
+    public Representation getPerformersRepresentation() {
+        return _performersRepresentation;
+    }
+
+    /**
+     * A marshalled response body and its entity tag. The tag is derived from the body, so every service node gives
+     * the same content the same tag.
+     */
+    public static class Representation {
+        private final byte[] _body;
+        private final EntityTag _entityTag;
+
+        Representation(byte[] body) {
+            _body = body;
+            _entityTag = new EntityTag(digest(body));
+        }
+
+        /**
+         * @return the body. Callers must not modify it.
+         */
+        public byte[] getBody() {
+            return _body;
+        }
+
+        public EntityTag getEntityTag() {
+            return _entityTag;
+        }
+
+        private static String digest(byte[] body) {
+            try {
+                byte[] hash = MessageDigest.getInstance("SHA-256").digest(body);
+                StringBuilder hex = new StringBuilder();
+                for (int i = 0; i < 16; i++) {
+                    hex.append(String.format("%02x", hash[i]));
+                }
+                return hex.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
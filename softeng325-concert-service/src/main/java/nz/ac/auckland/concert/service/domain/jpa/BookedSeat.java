@@ -0,0 +1,109 @@
+package nz.ac.auckland.concert.service.domain.jpa;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Records that a seat at a concert date has been booked. The primary key is the concert, date and seat (as a seat
+ * code, see SeatConverter), so the database itself refuses to book a seat twice, whichever service node makes the
+ * booking. A booking inserts one BookedSeat per seat alongside the Booking; a duplicate seat makes the insert fail.
+ */
+@Entity
+@Table(name = "BOOKED_SEATS")
+@IdClass(BookedSeat.Key.class)
+@NamedQuery(name = BookedSeat.FIND_SEAT_CODES_BY_CONCERT_DATE,
+        query = "SELECT s._seatCode FROM BookedSeat s WHERE s._concertId = :concertId AND s._dateTime = :date")
+public class BookedSeat {
+
+    // Named queries. Only seat codes are selected, so no BookedSeat objects are created.
+    public static final String FIND_SEAT_CODES_BY_CONCERT_DATE = "BookedSeat.findSeatCodesByConcertDate";
+
+    @Id
+    @Column(name = "CONCERT_ID")
+    private Long _concertId;
+
+    @Id
+    @Column(name = "DATE_TIME")
+    private LocalDateTime _dateTime;
+
+    @Id
+    @Column(name = "SEAT_CODE")
+    private int _seatCode;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "BOOKING_ID")
+    private Booking _booking;
+
+    public BookedSeat(Booking booking, Seat seat) {
+        _concertId = booking.getConcert().getId();
+        _dateTime = booking.getDateTime();
+        _seatCode = SeatConverter.toCode(seat.getRow(), seat.getNumber().intValue());
+        _booking = booking;
+    }
+
+    public BookedSeat() {}
+
+    public Long getConcertId() {
+        return _concertId;
+    }
+
+    public LocalDateTime getDateTime() {
+        return _dateTime;
+    }
+
+    public int getSeatCode() {
+        return _seatCode;
+    }
+
+    public Booking getBooking() {
+        return _booking;
+    }
+
+    /**
+     * Primary key of a BookedSeat
+     */
+    public static class Key implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private Long _concertId;
+        private LocalDateTime _dateTime;
+        private int _seatCode;
+
+        public Key(Long concertId, LocalDateTime dateTime, int seatCode) {
+            _concertId = concertId;
+            _dateTime = dateTime;
+            _seatCode = seatCode;
+        }
+
+        public Key() {}
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            if (obj == this)
+                return true;
+
+            Key rhs = (Key) obj;
+            return new EqualsBuilder().
+                    append(_concertId, rhs._concertId).
+                    append(_dateTime, rhs._dateTime).
+                    append(_seatCode, rhs._seatCode).
+                    isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(17, 31).
+                    append(_concertId).
+                    append(_dateTime).
+                    append(_seatCode).
+                    hashCode();
+        }
+    }
+}
@@ -11,6 +11,7 @@ import java.util.Set;
  * Represents a booking
  */
 @Entity
+@Table(indexes = @Index(name = "BOOKING_CONCERT_DATE_IDX", columnList = "CONCERT_ID, _dateTime"))
 public class Booking {
 
     @Id
@@ -18,12 +19,16 @@ public class Booking {
     private Long _id;
 
     @ManyToOne
+    @JoinColumn(name = "CONCERT_ID")
     private Concert _concert;
 
     @Column(nullable = false)
     private LocalDateTime _dateTime;
 
-    @ManyToMany
+    @ElementCollection
+    @CollectionTable(name = "BOOKING_SEATS", joinColumns = @JoinColumn(name = "BOOKING_ID"))
+    @Convert(converter = SeatConverter.class)
+    @Column(name = "SEAT_CODE", nullable = false)
     private Set<Seat> _seats = new HashSet<>();
 
     @Column(nullable = false)
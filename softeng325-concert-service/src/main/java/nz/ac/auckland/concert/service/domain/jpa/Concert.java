@@ -1,6 +1,8 @@
 package nz.ac.auckland.concert.service.domain.jpa;
 
 import nz.ac.auckland.concert.common.types.PriceBand;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.jpa.QueryHints;
 
 import javax.persistence.*;
 import java.math.BigDecimal;
@@ -11,11 +13,26 @@ import java.util.Map;
 import java.util.Set;
 
 /**
- * Represents a concert
+ * Represents a concert. Concerts are read-mostly, so they and their collections are kept in the second-level cache
+ * (see Catalogue.invalidate() for eviction).
  */
 @Entity(name = "CONCERTS")
+@Cacheable
+@org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@NamedQueries({
+        @NamedQuery(name = Concert.FIND_ALL_WITH_DATES_AND_PRICES,
+                query = "SELECT DISTINCT c FROM CONCERTS c LEFT JOIN FETCH c._dates LEFT JOIN FETCH c._ticketPrices",
+                hints = @QueryHint(name = QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false")),
+        @NamedQuery(name = Concert.FIND_ALL_WITH_PERFORMERS,
+                query = "SELECT DISTINCT c FROM CONCERTS c LEFT JOIN FETCH c._performers",
+                hints = @QueryHint(name = QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+})
 public class Concert implements Comparable<Concert> {
 
+    // Named queries
+    public static final String FIND_ALL_WITH_DATES_AND_PRICES = "Concert.findAllWithDatesAndPrices";
+    public static final String FIND_ALL_WITH_PERFORMERS = "Concert.findAllWithPerformers";
+
     @Id
     @GeneratedValue
     private Long _id;
@@ -25,17 +42,20 @@ public class Concert implements Comparable<Concert> {
 
     @ElementCollection
     @CollectionTable(name = "CONCERT_DATES")
+    @org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @Column(nullable = false)
     private Set<LocalDateTime> _dates = new HashSet<>();
 
     @ElementCollection
     @CollectionTable(name = "CONCERT_TARIFFS")
+    @org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @MapKeyColumn(name = "PRICE_BAND")
     @MapKeyEnumerated(EnumType.STRING)
     @Column(nullable = false)
     private Map<PriceBand, BigDecimal> _ticketPrices = new HashMap<>();
 
     @ManyToMany(cascade = CascadeType.PERSIST)
+    @org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @JoinTable(
             name = "CONCERT_PERFORMER",
             joinColumns = @JoinColumn(name = "CONCERT_ID"),
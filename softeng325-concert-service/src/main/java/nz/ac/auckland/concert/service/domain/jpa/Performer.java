@@ -1,17 +1,32 @@
 package nz.ac.auckland.concert.service.domain.jpa;
 
 import nz.ac.auckland.concert.common.types.Genre;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.jpa.QueryHints;
 
 import javax.persistence.*;
 import java.util.HashSet;
 import java.util.Set;
 
 /**
- * Represents a performer
+ * Represents a performer. Like concerts, performers are kept in the second-level cache.
  */
 @Entity(name = "PERFORMERS")
+@Cacheable
+@org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@NamedQueries({
+        @NamedQuery(name = Performer.FIND_ALL_WITH_CONCERTS,
+                query = "SELECT DISTINCT p FROM PERFORMERS p LEFT JOIN FETCH p._concerts",
+                hints = @QueryHint(name = QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false")),
+        @NamedQuery(name = Performer.FIND_IMAGE_NAME_BY_ID,
+                query = "SELECT p._imageName FROM PERFORMERS p WHERE p._id = :id")
+})
 public class Performer {
 
+    // Named queries
+    public static final String FIND_ALL_WITH_CONCERTS = "Performer.findAllWithConcerts";
+    public static final String FIND_IMAGE_NAME_BY_ID = "Performer.findImageNameById";
+
     @Id
     @GeneratedValue
     private Long _id;
@@ -25,6 +40,7 @@ public class Performer {
     private String _name;
 
     @ManyToMany(mappedBy = "_performers")
+    @org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     private Set<Concert> _concerts = new HashSet<>();
 
     public Performer() {}
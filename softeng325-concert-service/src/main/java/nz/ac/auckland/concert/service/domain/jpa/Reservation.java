@@ -5,30 +5,71 @@ import java.time.LocalDateTime;
 import java.util.Set;
 
 /**
- * Represents a reservation
+ * Represents a reservation. A reservation's id is also the hold id its seats are held under in the show's seat state
+ * (see ShowSeats), so it is assigned when the seats are reserved rather than generated by the database.
  */
 @Entity
+@Table(indexes = @Index(name = "RESERVATION_CONCERT_DATE_IDX", columnList = "CONCERT_ID, _date"))
+@NamedQueries({
+        @NamedQuery(name = Reservation.FIND_HOLD_BY_ID,
+                query = "SELECT r._request._concert._id, r._request._date, r._request._seatType, r._expiryDate, " +
+                        "r._username FROM Reservation r WHERE r._id = :id"),
+        @NamedQuery(name = Reservation.FIND_EXPIRED_IDS,
+                query = "SELECT r._id FROM Reservation r WHERE r._expiryDate < :now"),
+        @NamedQuery(name = Reservation.DELETE_BY_IDS,
+                query = "DELETE FROM Reservation r WHERE r._id IN :ids")
+})
+@NamedNativeQueries({
+        @NamedNativeQuery(name = Reservation.FIND_UNEXPIRED_SEAT_CODES_BY_CONCERT_DATE,
+                query = "SELECT s.SEAT_CODE, r._id, r._expiryDate FROM RESERVATION_SEATS s " +
+                        "JOIN Reservation r ON s.RESERVATION_ID = r._id " +
+                        "WHERE r.CONCERT_ID = :concertId AND r._date = :date AND r._expiryDate >= :now " +
+                        "ORDER BY r._id"),
+        @NamedNativeQuery(name = Reservation.FIND_SEAT_CODES_BY_ID,
+                query = "SELECT SEAT_CODE FROM RESERVATION_SEATS WHERE RESERVATION_ID = :id"),
+        @NamedNativeQuery(name = Reservation.DELETE_SEATS_BY_IDS,
+                query = "DELETE FROM RESERVATION_SEATS WHERE RESERVATION_ID IN :ids")
+})
 public class Reservation {
 
+    // Named queries. Seat codes are read and deleted with SQL so that no Reservation or Seat objects are created
+    // for them; a bulk JPQL DELETE doesn't remove a reservation's seats.
+    public static final String FIND_HOLD_BY_ID = "Reservation.findHoldById";
+    public static final String FIND_SEAT_CODES_BY_ID = "Reservation.findSeatCodesById";
+    public static final String FIND_UNEXPIRED_SEAT_CODES_BY_CONCERT_DATE =
+            "Reservation.findUnexpiredSeatCodesByConcertDate";
+    public static final String FIND_EXPIRED_IDS = "Reservation.findExpiredIds";
+    public static final String DELETE_SEATS_BY_IDS = "Reservation.deleteSeatsByIds";
+    public static final String DELETE_BY_IDS = "Reservation.deleteByIds";
+
     @Id
-    @GeneratedValue
     private Long _id;
 
     @Embedded
     private ReservationRequest _request;
 
-    @ManyToMany
+    @ElementCollection
+    @CollectionTable(name = "RESERVATION_SEATS", joinColumns = @JoinColumn(name = "RESERVATION_ID"))
+    @Convert(converter = SeatConverter.class)
+    @Column(name = "SEAT_CODE", nullable = false)
     private Set<Seat> _seats;
 
     private LocalDateTime _expiryDate;
 
+    // The user the reservation was made for, who is the only user that can confirm it
+    @Column(nullable = false)
+    private String _username;
+
     @Version
     private Long _version;
 
-    public Reservation(ReservationRequest request, Set<Seat> seats, LocalDateTime expiryDate) {
+    public Reservation(Long id, ReservationRequest request, Set<Seat> seats, LocalDateTime expiryDate,
+                       String username) {
+        this._id = id;
         this._request = request;
         this._seats = seats;
         _expiryDate = expiryDate;
+        _username = username;
     }
 
     public Reservation() {}
@@ -61,6 +102,14 @@ public class Reservation {
         this._expiryDate = _expiryDate;
     }
 
+    public String getUsername() {
+        return _username;
+    }
+
+    public void setUsername(String username) {
+        this._username = username;
+    }
+
     public Long getVersion() {
         return _version;
     }
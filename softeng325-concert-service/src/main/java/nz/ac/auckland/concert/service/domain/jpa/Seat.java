@@ -2,22 +2,17 @@ package nz.ac.auckland.concert.service.domain.jpa;
 
 import nz.ac.auckland.concert.common.types.SeatNumber;
 import nz.ac.auckland.concert.common.types.SeatRow;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
 
-import javax.persistence.*;
-
-@Entity
+/**
+ * Represents a seat at the concert venue. Seats are values rather than entities: bookings and reservations store
+ * them as packed seat codes (see SeatConverter).
+ */
 public class Seat {
 
-    @Id
-    @GeneratedValue
-    private Long _id;
-
-    @Enumerated
-    @Column(nullable = false)
     private SeatRow _row;
 
-    @Convert(converter = SeatNumberConverter.class)
-    @Column(nullable = false)
     private SeatNumber _number;
 
     public Seat(SeatRow _row, SeatNumber _number) {
@@ -42,4 +37,26 @@ public class Seat {
     public void setNumber(SeatNumber number) {
         this._number = number;
     }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Seat))
+            return false;
+        if (obj == this)
+            return true;
+
+        Seat rhs = (Seat) obj;
+        return new EqualsBuilder().
+                append(_row, rhs._row).
+                append(_number, rhs._number).
+                isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder(17, 31).
+                append(_row).
+                append(_number).
+                hashCode();
+    }
 }
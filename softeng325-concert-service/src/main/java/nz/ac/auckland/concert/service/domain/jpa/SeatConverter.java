@@ -0,0 +1,53 @@
+package nz.ac.auckland.concert.service.domain.jpa;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+import nz.ac.auckland.concert.common.types.SeatNumber;
+import nz.ac.auckland.concert.common.types.SeatRow;
+
+/**
+ * AttributeConverter class to convert Seat objects to packed seat codes. A
+ * seat code holds the row's ordinal in its upper bits and the seat number in
+ * its lower 5 bits, so every seat in the venue fits in a small Integer column.
+ *
+ */
+@Converter
+public class SeatConverter implements
+		AttributeConverter<Seat, Integer> {
+
+	private static final int NUMBER_BITS = 5;
+	private static final int NUMBER_MASK = (1 << NUMBER_BITS) - 1;
+	private static final SeatRow[] ROWS = SeatRow.values();
+
+	@Override
+	public Integer convertToDatabaseColumn(Seat seat) {
+		return (seat == null ? null : toCode(seat.getRow(), seat.getNumber().intValue()));
+	}
+
+	@Override
+	public Seat convertToEntityAttribute(Integer code) {
+		return (code == null ? null : new Seat(rowOf(code), new SeatNumber(numberOf(code))));
+	}
+
+	/**
+	 * Packs a row and seat number into a seat code.
+	 */
+	public static int toCode(SeatRow row, int number) {
+		return (row.ordinal() << NUMBER_BITS) | number;
+	}
+
+	/**
+	 * Returns the row of a seat code.
+	 */
+	public static SeatRow rowOf(int code) {
+		return ROWS[code >>> NUMBER_BITS];
+	}
+
+	/**
+	 * Returns the seat number of a seat code.
+	 */
+	public static int numberOf(int code) {
+		return code & NUMBER_MASK;
+	}
+}
@@ -0,0 +1,362 @@
+package nz.ac.auckland.concert.service.inventory;
+
+import nz.ac.auckland.concert.common.dto.SeatDTO;
+import nz.ac.auckland.concert.common.types.PriceBand;
+import nz.ac.auckland.concert.common.types.SeatAllocation;
+import nz.ac.auckland.concert.service.domain.jpa.SeatConverter;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * ShowSeats held in atomic bitmaps. Each price band has an AtomicLongArray with one bit per seat slot (see SeatLayout)
+ * and another with the hold id of each slot's reservation (see ShowSeats). A seat is claimed by setting its bit with
+ * compare-and-set, so concurrent reservations on the same show never block each other: a reservation that loses a
+ * seat to another one gives back whatever it had already claimed and carries on looking.
+ *
+ * A seat's bit is always set before its hold id is recorded and its hold id is always cleared before its bit is, so a
+ * seat can never be freed by one reservation while another one holds it. None of the methods lock, so shows
+ * using this class don't need to be run through ShowSequencer.
+ */
+public class AtomicShowSeats implements ShowSeats {
+
+    // Holder recorded against free seats, and against booked seats, which never expire. Hold ids are positive.
+    private static final long FREE = 0;
+    private static final long BOOKED = -1;
+
+    private final AtomicLongArray[] _taken = new AtomicLongArray[PriceBand.values().length];
+    private final AtomicLongArray[] _holders = new AtomicLongArray[PriceBand.values().length];
+
+    // Reservations ordered by expiry, so expired ones can be freed without scanning every seat
+    private final PriorityBlockingQueue<Hold> _holds = new PriorityBlockingQueue<>();
+
+    public AtomicShowSeats() {
+        for (PriceBand band : PriceBand.values()) {
+            int size = SeatLayout.getNumberOfSeats(band);
+            _taken[band.ordinal()] = new AtomicLongArray((size + Long.SIZE - 1) / Long.SIZE);
+            _holders[band.ordinal()] = new AtomicLongArray(size);
+        }
+    }
+
+    @Override
+    public Set<SeatDTO> reserve(int numberOfSeats, PriceBand band, SeatAllocation allocation, long holdId,
+                                LocalDateTime expiryDate) {
+        releaseExpired(LocalDateTime.now());
+
+        int[] slots;
+        if (countFree(band) < numberOfSeats) {
+            slots = null;
+        } else if (allocation == SeatAllocation.Contiguous) {
+            slots = claimContiguousSeats(numberOfSeats, band);
+        } else if (allocation == SeatAllocation.BestAvailable) {
+            slots = claimBestSeats(numberOfSeats, band);
+        } else {
+            slots = claimAnySeats(numberOfSeats, band);
+        }
+
+        if (slots == null) {
+            return new HashSet<>();
+        }
+        return hold(band, slots, holdId, expiryDate);
+    }
+
+    @Override
+    public boolean book(Collection<SeatDTO> seats, long holdId, LocalDateTime expiryDate) {
+        PriceBand[] bands = new PriceBand[seats.size()];
+        int[] slots = new int[seats.size()];
+
+        int booked = 0;
+        for (SeatDTO seat : seats) {
+            bands[booked] = SeatLayout.getPriceBand(seat.getRow());
+            slots[booked] = SeatLayout.getSlot(seat);
+
+            if (slots[booked] < 0 ||
+                    !_holders[bands[booked].ordinal()].compareAndSet(slots[booked], holdId, BOOKED)) {
+                revert(bands, slots, booked, holdId, expiryDate);
+                return false;
+            }
+            booked++;
+        }
+        return true;
+    }
+
+    @Override
+    public void unbook(Collection<SeatDTO> seats, long holdId, LocalDateTime expiryDate) {
+        for (SeatDTO seat : seats) {
+            int slot = SeatLayout.getSlot(seat);
+            PriceBand band = SeatLayout.getPriceBand(seat.getRow());
+            if (slot >= 0 && _holders[band.ordinal()].compareAndSet(slot, BOOKED, holdId)) {
+                _holds.add(new Hold(band, new int[]{slot}, holdId, expiryDate));
+            }
+        }
+    }
+
+    @Override
+    public void release(Collection<SeatDTO> seats, long holdId) {
+        for (SeatDTO seat : seats) {
+            int slot = SeatLayout.getSlot(seat);
+            if (slot >= 0) {
+                free(SeatLayout.getPriceBand(seat.getRow()), slot, holdId);
+            }
+        }
+    }
+
+    @Override
+    public void markBooked(int[] seatCodes) {
+        for (int seatCode : seatCodes) {
+            int slot = SeatLayout.getSlot(seatCode);
+            if (slot >= 0) {
+                PriceBand band = SeatLayout.getPriceBand(SeatConverter.rowOf(seatCode));
+                claim(band, slot);
+                _holders[band.ordinal()].set(slot, BOOKED);
+            }
+        }
+    }
+
+    @Override
+    public void markReserved(int[] seatCodes, long holdId, LocalDateTime expiryDate) {
+        for (int seatCode : seatCodes) {
+            int slot = SeatLayout.getSlot(seatCode);
+            if (slot >= 0) {
+                PriceBand band = SeatLayout.getPriceBand(SeatConverter.rowOf(seatCode));
+
+                // A slot that can't be claimed is already booked or reserved, so leave its holder alone
+                if (claim(band, slot)) {
+                    hold(band, new int[]{slot}, holdId, expiryDate);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getNumberOfAvailableSeats(PriceBand band) {
+        releaseExpired(LocalDateTime.now());
+        return countFree(band);
+    }
+
+    /**
+     * Claims free slots from a random start, wrapping around the end of the band
+     * @return the claimed slots, or null if there are not enough free seats
+     */
+    private int[] claimAnySeats(int numberOfSeats, PriceBand band) {
+        int size = SeatLayout.getNumberOfSeats(band);
+        int[] slots = new int[numberOfSeats];
+        int claimed = 0;
+
+        int start = ThreadLocalRandom.current().nextInt(size);
+        for (int i = 0; i < size && claimed < numberOfSeats; i++) {
+            int slot = (start + i) % size;
+            if (claim(band, slot)) {
+                slots[claimed++] = slot;
+            }
+        }
+        return claimedAll(band, slots, claimed);
+    }
+
+    /**
+     * Claims adjacent free slots in a single row. Rows are scanned from the front of the band; if another reservation
+     * claims one of the seats first, the seats claimed so far are given back and the scan carries on past it.
+     * @return the claimed slots, or null if no row has enough adjacent free seats
+     */
+    private int[] claimContiguousSeats(int numberOfSeats, PriceBand band) {
+        int size = SeatLayout.getNumberOfSeats(band);
+        int[] slots = new int[numberOfSeats];
+
+        int start = 0;
+        while (start + numberOfSeats <= size) {
+            int end = start + numberOfSeats - 1;
+            if (!sameRow(band, start, end)) {
+
+                // The run would cross into the next row, so start again at the next row
+                start = nextRow(band, start);
+                continue;
+            }
+
+            int claimed = 0;
+            while (claimed < numberOfSeats && claim(band, start + claimed)) {
+                slots[claimed] = start + claimed;
+                claimed++;
+            }
+            if (claimed == numberOfSeats) {
+                return slots;
+            }
+            for (int i = 0; i < claimed; i++) {
+                unclaim(band, slots[i]);
+            }
+            start += claimed + 1;
+        }
+        return null;
+    }
+
+    /**
+     * Claims the best free slots in the band, visiting seats in rank order
+     * @return the claimed slots, or null if there are not enough free seats
+     */
+    private int[] claimBestSeats(int numberOfSeats, PriceBand band) {
+        int size = SeatLayout.getNumberOfSeats(band);
+        int[] slots = new int[numberOfSeats];
+        int claimed = 0;
+
+        for (int rank = 0; rank < size && claimed < numberOfSeats; rank++) {
+            int slot = SeatLayout.getSlotAtRank(band, rank);
+            if (claim(band, slot)) {
+                slots[claimed++] = slot;
+            }
+        }
+        return claimedAll(band, slots, claimed);
+    }
+
+    /**
+     * Returns the claimed slots if all of them were claimed, otherwise gives them back
+     */
+    private int[] claimedAll(PriceBand band, int[] slots, int claimed) {
+        if (claimed == slots.length) {
+            return slots;
+        }
+        for (int i = 0; i < claimed; i++) {
+            unclaim(band, slots[i]);
+        }
+        return null;
+    }
+
+    /**
+     * Puts booked slots back under their reservation after a booking has failed part way through. If the reservation
+     * expired in the meantime the slots are freed, since its Hold may already have been dealt with.
+     */
+    private void revert(PriceBand[] bands, int[] slots, int booked, long holdId, LocalDateTime expiryDate) {
+        boolean expired = expiryDate.isBefore(LocalDateTime.now());
+        for (int i = 0; i < booked; i++) {
+            _holders[bands[i].ordinal()].set(slots[i], holdId);
+            if (expired) {
+                free(bands[i], slots[i], holdId);
+            }
+        }
+    }
+
+    /**
+     * Records claimed slots as held by a reservation
+     */
+    private Set<SeatDTO> hold(PriceBand band, int[] slots, long holdId, LocalDateTime expiryDate) {
+        Set<SeatDTO> seats = new HashSet<>();
+        for (int slot : slots) {
+            _holders[band.ordinal()].set(slot, holdId);
+            seats.add(SeatLayout.getSeat(band, slot));
+        }
+        _holds.add(new Hold(band, slots, holdId, expiryDate));
+        return seats;
+    }
+
+    /**
+     * Frees the seats of every reservation that expired before a given time
+     */
+    private void releaseExpired(LocalDateTime now) {
+        Hold hold;
+        while ((hold = _holds.peek()) != null && hold._expiryDate.isBefore(now)) {
+            hold = _holds.poll();
+            if (hold == null) {
+                return;
+            }
+            if (!hold._expiryDate.isBefore(now)) {
+
+                // Another thread freed the expired reservation first, so put this one back
+                _holds.add(hold);
+                return;
+            }
+
+            // Only free seats still held by this reservation
+            for (int slot : hold._slots) {
+                free(hold._band, slot, hold._holdId);
+            }
+        }
+    }
+
+    /**
+     * Sets a slot's bit
+     * @return true if the slot was free and has been claimed by this call
+     */
+    private boolean claim(PriceBand band, int slot) {
+        AtomicLongArray taken = _taken[band.ordinal()];
+        int word = slot / Long.SIZE;
+        long mask = 1L << (slot % Long.SIZE);
+
+        long bits;
+        do {
+            bits = taken.get(word);
+            if ((bits & mask) != 0) {
+                return false;
+            }
+        } while (!taken.compareAndSet(word, bits, bits | mask));
+        return true;
+    }
+
+    /**
+     * Clears a slot's bit
+     */
+    private void unclaim(PriceBand band, int slot) {
+        AtomicLongArray taken = _taken[band.ordinal()];
+        int word = slot / Long.SIZE;
+        long mask = 1L << (slot % Long.SIZE);
+
+        long bits;
+        do {
+            bits = taken.get(word);
+        } while (!taken.compareAndSet(word, bits, bits & ~mask));
+    }
+
+    /**
+     * Frees a slot if it is still held by a given reservation
+     */
+    private void free(PriceBand band, int slot, long holdId) {
+        if (_holders[band.ordinal()].compareAndSet(slot, holdId, FREE)) {
+            unclaim(band, slot);
+        }
+    }
+
+    private int countFree(PriceBand band) {
+        AtomicLongArray taken = _taken[band.ordinal()];
+        int count = 0;
+        for (int i = 0; i < taken.length(); i++) {
+            count += Long.bitCount(taken.get(i));
+        }
+        return SeatLayout.getNumberOfSeats(band) - count;
+    }
+
+    private boolean sameRow(PriceBand band, int slot, int other) {
+        return SeatLayout.getSeat(band, slot).getRow() == SeatLayout.getSeat(band, other).getRow();
+    }
+
+    private int nextRow(PriceBand band, int slot) {
+        int next = slot + 1;
+        while (next < SeatLayout.getNumberOfSeats(band) && sameRow(band, slot, next)) {
+            next++;
+        }
+        return next;
+    }
+
+    /**
+     * Seats held by a single reservation
+     */
+    private static class Hold implements Comparable<Hold> {
+        private final PriceBand _band;
+        private final int[] _slots;
+        private final long _holdId;
+        private final LocalDateTime _expiryDate;
+
+        Hold(PriceBand band, int[] slots, long holdId, LocalDateTime expiryDate) {
+            _band = band;
+            _slots = slots;
+            _holdId = holdId;
+            _expiryDate = expiryDate;
+        }
+
+        @Override
+        public int compareTo(Hold other) {
+            return _expiryDate.compareTo(other._expiryDate);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package nz.ac.auckland.concert.service.inventory;
+
+import nz.ac.auckland.concert.common.dto.SeatDTO;
+import nz.ac.auckland.concert.common.types.PriceBand;
+import nz.ac.auckland.concert.common.types.SeatAllocation;
+import nz.ac.auckland.concert.service.domain.jpa.SeatConverter;
+
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * ShowSeats held in plain bitmaps. Each price band has a bitmap with one bit per seat slot (see SeatLayout); a set
+ * bit means the seat is reserved or booked. Reserved seats also record the hold id of their reservation
+ * (see ShowSeats), and a queue of reservations ordered by expiry lets them be freed again without going back to the
+ * database. A FreeRunIndex per band tracks runs of
+ * adjacent free seats for contiguous allocation, and a second bitmap indexed by seat rank (see SeatLayout) keeps the
+ * free seats in best-first order.
+ *
+ * Reservations and bookings update a show's seats through ShowSequencer, so there is a single writer per show. All
+ * methods are also synchronized on the BitmapShowSeats object, which keeps loading and reads safe from other threads.
+ */
+public class BitmapShowSeats implements ShowSeats {
+
+    // Holder recorded against free seats, and against booked seats, which never expire. Hold ids are positive.
+    private static final long FREE = 0;
+    private static final long BOOKED = -1;
+
+    private final BitSet[] _taken = new BitSet[PriceBand.values().length];
+    private final BitSet[] _takenByRank = new BitSet[PriceBand.values().length];
+    private final long[][] _holders = new long[PriceBand.values().length][];
+    private final FreeRunIndex[] _freeRuns = new FreeRunIndex[PriceBand.values().length];
+
+    // Reservations ordered by expiry, so expired ones can be freed without scanning every seat
+    private final PriorityQueue<Hold> _holds = new PriorityQueue<>();
+
+    private final Random _random = new Random();
+
+    public BitmapShowSeats() {
+        for (PriceBand band : PriceBand.values()) {
+            int size = SeatLayout.getNumberOfSeats(band);
+            _taken[band.ordinal()] = new BitSet(size);
+            _takenByRank[band.ordinal()] = new BitSet(size);
+            _holders[band.ordinal()] = new long[size];
+            _freeRuns[band.ordinal()] = new FreeRunIndex(band);
+        }
+    }
+
+    @Override
+    public synchronized Set<SeatDTO> reserve(int numberOfSeats, PriceBand band, SeatAllocation allocation,
+                                             long holdId, LocalDateTime expiryDate) {
+        releaseExpired(LocalDateTime.now());
+
+        int[] slots;
+        if (allocation == SeatAllocation.Contiguous) {
+            slots = findContiguousSeats(numberOfSeats, band);
+        } else if (allocation == SeatAllocation.BestAvailable) {
+            slots = findBestSeats(numberOfSeats, band);
+        } else {
+            slots = findAnySeats(numberOfSeats, band);
+        }
+
+        if (slots == null) {
+            return new HashSet<>();
+        }
+        for (int slot : slots) {
+            take(band, slot);
+        }
+        return hold(band, slots, holdId, expiryDate);
+    }
+
+    @Override
+    public synchronized boolean book(Collection<SeatDTO> seats, long holdId, LocalDateTime expiryDate) {
+        for (SeatDTO seat : seats) {
+            if (holderOf(seat) != holdId) {
+                return false;
+            }
+        }
+        for (SeatDTO seat : seats) {
+            setBooked(SeatLayout.getPriceBand(seat.getRow()), SeatLayout.getSlot(seat));
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void unbook(Collection<SeatDTO> seats, long holdId, LocalDateTime expiryDate) {
+        for (SeatDTO seat : seats) {
+            if (holderOf(seat) == BOOKED) {
+                PriceBand band = SeatLayout.getPriceBand(seat.getRow());
+                hold(band, new int[]{SeatLayout.getSlot(seat)}, holdId, expiryDate);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void release(Collection<SeatDTO> seats, long holdId) {
+        for (SeatDTO seat : seats) {
+            if (holderOf(seat) == holdId) {
+                free(SeatLayout.getPriceBand(seat.getRow()), SeatLayout.getSlot(seat));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void markBooked(int[] seatCodes) {
+        for (int seatCode : seatCodes) {
+            int slot = SeatLayout.getSlot(seatCode);
+            if (slot >= 0) {
+                setBooked(SeatLayout.getPriceBand(SeatConverter.rowOf(seatCode)), slot);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void markReserved(int[] seatCodes, long holdId, LocalDateTime expiryDate) {
+        for (int seatCode : seatCodes) {
+            int slot = SeatLayout.getSlot(seatCode);
+            if (slot >= 0) {
+                PriceBand band = SeatLayout.getPriceBand(SeatConverter.rowOf(seatCode));
+                if (!_taken[band.ordinal()].get(slot)) {
+                    take(band, slot);
+                    hold(band, new int[]{slot}, holdId, expiryDate);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized int getNumberOfAvailableSeats(PriceBand band) {
+        releaseExpired(LocalDateTime.now());
+        return SeatLayout.getNumberOfSeats(band) - _taken[band.ordinal()].cardinality();
+    }
+
+    /**
+     * Picks consecutive free slots from a random start, wrapping around the end of the band
+     * @return the chosen slots, or null if there are not enough free seats
+     */
+    private int[] findAnySeats(int numberOfSeats, PriceBand band) {
+        BitSet taken = _taken[band.ordinal()];
+        int size = SeatLayout.getNumberOfSeats(band);
+
+        if (size - taken.cardinality() < numberOfSeats) {
+            return null;
+        }
+
+        int[] slots = new int[numberOfSeats];
+        int slot = _random.nextInt(size);
+        for (int i = 0; i < numberOfSeats; i++) {
+            slot = taken.nextClearBit(slot);
+            if (slot >= size) {
+                slot = taken.nextClearBit(0);
+            }
+            slots[i] = slot++;
+        }
+        return slots;
+    }
+
+    /**
+     * Picks adjacent free slots in a single row, using the shortest free run that is long enough
+     * @return the chosen slots, or null if no row has enough adjacent free seats
+     */
+    private int[] findContiguousSeats(int numberOfSeats, PriceBand band) {
+        int start = _freeRuns[band.ordinal()].findRun(numberOfSeats);
+        if (start < 0) {
+            return null;
+        }
+
+        int[] slots = new int[numberOfSeats];
+        for (int i = 0; i < numberOfSeats; i++) {
+            slots[i] = start + i;
+        }
+        return slots;
+    }
+
+    /**
+     * Picks the best free slots in the band. Free seats are visited in rank order, so this takes O(numberOfSeats)
+     * steps plus a word-at-a-time skip over taken seats.
+     * @return the chosen slots, or null if there are not enough free seats
+     */
+    private int[] findBestSeats(int numberOfSeats, PriceBand band) {
+        BitSet takenByRank = _takenByRank[band.ordinal()];
+        int size = SeatLayout.getNumberOfSeats(band);
+
+        if (size - takenByRank.cardinality() < numberOfSeats) {
+            return null;
+        }
+
+        int[] slots = new int[numberOfSeats];
+        int rank = 0;
+        for (int i = 0; i < numberOfSeats; i++) {
+            rank = takenByRank.nextClearBit(rank);
+            slots[i] = SeatLayout.getSlotAtRank(band, rank++);
+        }
+        return slots;
+    }
+
+    /**
+     * Records taken slots as held by a reservation
+     */
+    private Set<SeatDTO> hold(PriceBand band, int[] slots, long holdId, LocalDateTime expiryDate) {
+        Set<SeatDTO> seats = new HashSet<>();
+        for (int slot : slots) {
+            _holders[band.ordinal()][slot] = holdId;
+            seats.add(SeatLayout.getSeat(band, slot));
+        }
+        _holds.add(new Hold(band, slots, holdId, expiryDate));
+        return seats;
+    }
+
+    /**
+     * Frees the seats of every reservation that expired before a given time
+     */
+    private void releaseExpired(LocalDateTime now) {
+        while (!_holds.isEmpty() && _holds.peek()._expiryDate.isBefore(now)) {
+            Hold hold = _holds.poll();
+            for (int slot : hold._slots) {
+
+                // Only free the seat if it is still held by this reservation
+                if (_holders[hold._band.ordinal()][slot] == hold._holdId) {
+                    free(hold._band, slot);
+                }
+            }
+        }
+    }
+
+    private void setBooked(PriceBand band, int slot) {
+        take(band, slot);
+        _holders[band.ordinal()][slot] = BOOKED;
+    }
+
+    private void take(PriceBand band, int slot) {
+        _taken[band.ordinal()].set(slot);
+        _takenByRank[band.ordinal()].set(SeatLayout.getRank(band, slot));
+        _freeRuns[band.ordinal()].take(slot);
+    }
+
+    private void free(PriceBand band, int slot) {
+        _taken[band.ordinal()].clear(slot);
+        _takenByRank[band.ordinal()].clear(SeatLayout.getRank(band, slot));
+        _holders[band.ordinal()][slot] = FREE;
+        _freeRuns[band.ordinal()].free(slot);
+    }
+
+    private long holderOf(SeatDTO seat) {
+        int slot = SeatLayout.getSlot(seat);
+        if (slot < 0) {
+            return FREE;
+        }
+        return _holders[SeatLayout.getPriceBand(seat.getRow()).ordinal()][slot];
+    }
+
+    /**
+     * Seats held by a single reservation
+     */
+    private static class Hold implements Comparable<Hold> {
+        private final PriceBand _band;
+        private final int[] _slots;
+        private final long _holdId;
+        private final LocalDateTime _expiryDate;
+
+        Hold(PriceBand band, int[] slots, long holdId, LocalDateTime expiryDate) {
+            _band = band;
+            _slots = slots;
+            _holdId = holdId;
+            _expiryDate = expiryDate;
+        }
+
+        @Override
+        public int compareTo(Hold other) {
+            return _expiryDate.compareTo(other._expiryDate);
+        }
+    }
+}
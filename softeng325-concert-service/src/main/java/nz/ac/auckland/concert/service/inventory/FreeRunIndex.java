@@ -0,0 +1,118 @@
+package nz.ac.auckland.concert.service.inventory;
+
+import nz.ac.auckland.concert.common.types.PriceBand;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Index of the runs of adjacent free seats in a price band. A run never spans more than one row. Runs are indexed by
+ * both start slot and length, so the index is updated in O(log n) time as single seats are taken or freed, and a run
+ * of at least a given length can be found in O(log n) time however full the band is.
+ */
+public class FreeRunIndex {
+
+    private final PriceBand _band;
+
+    // Free runs keyed by start slot, mapped to their end slot (exclusive)
+    private final TreeMap<Integer, Integer> _runs = new TreeMap<>();
+
+    // Start slots of the free runs, keyed by run length
+    private final TreeMap<Integer, TreeSet<Integer>> _startsByLength = new TreeMap<>();
+
+    /**
+     * Creates an index in which every seat in the band is free
+     * @param band the price band
+     */
+    public FreeRunIndex(PriceBand band) {
+        _band = band;
+
+        // Each row starts as a single run
+        int size = SeatLayout.getNumberOfSeats(band);
+        int start = 0;
+        for (int slot = 1; slot <= size; slot++) {
+            if (slot == size || !sameRow(slot - 1, slot)) {
+                addRun(start, slot);
+                start = slot;
+            }
+        }
+    }
+
+    /**
+     * Finds the shortest run of free seats that is at least a given length
+     * @param length the number of adjacent seats required
+     * @return the first slot of the run, or -1 if there is no such run
+     */
+    public int findRun(int length) {
+        Map.Entry<Integer, TreeSet<Integer>> entry = _startsByLength.ceilingEntry(length);
+        return entry == null ? -1 : entry.getValue().first();
+    }
+
+    /**
+     * Records that a free seat has been taken, splitting the run that contained it
+     * @param slot the seat's slot
+     */
+    public void take(int slot) {
+        Map.Entry<Integer, Integer> run = _runs.floorEntry(slot);
+        if (run == null || run.getValue() <= slot) {
+            return;
+        }
+        int start = run.getKey();
+        int end = run.getValue();
+
+        removeRun(start, end);
+        if (start < slot) {
+            addRun(start, slot);
+        }
+        if (slot + 1 < end) {
+            addRun(slot + 1, end);
+        }
+    }
+
+    /**
+     * Records that a taken seat has been freed, merging it with any adjacent runs in the same row
+     * @param slot the seat's slot
+     */
+    public void free(int slot) {
+        int start = slot;
+        int end = slot + 1;
+
+        // Merge with the run to the left
+        Map.Entry<Integer, Integer> left = _runs.floorEntry(slot);
+        if (left != null && left.getValue() > slot) {
+            return; // already free
+        }
+        if (left != null && left.getValue() == slot && sameRow(slot - 1, slot)) {
+            start = left.getKey();
+            removeRun(left.getKey(), left.getValue());
+        }
+
+        // Merge with the run to the right
+        Integer rightEnd = _runs.get(slot + 1);
+        if (rightEnd != null && sameRow(slot, slot + 1)) {
+            end = rightEnd;
+            removeRun(slot + 1, rightEnd);
+        }
+
+        addRun(start, end);
+    }
+
+    private void addRun(int start, int end) {
+        _runs.put(start, end);
+        _startsByLength.computeIfAbsent(end - start, length -> new TreeSet<>()).add(start);
+    }
+
+    private void removeRun(int start, int end) {
+        _runs.remove(start);
+        TreeSet<Integer> starts = _startsByLength.get(end - start);
+        starts.remove(start);
+        if (starts.isEmpty()) {
+            _startsByLength.remove(end - start);
+        }
+    }
+
+    private boolean sameRow(int slot, int other) {
+        return SeatLayout.getSeat(_band, slot).getRow() == SeatLayout.getSeat(_band, other).getRow();
+    }
+}
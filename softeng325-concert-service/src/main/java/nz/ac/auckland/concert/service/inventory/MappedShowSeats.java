@@ -0,0 +1,200 @@
+package nz.ac.auckland.concert.service.inventory;
+
+import nz.ac.auckland.concert.common.dto.SeatDTO;
+import nz.ac.auckland.concert.common.types.PriceBand;
+import nz.ac.auckland.concert.common.types.SeatAllocation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * ShowSeats held in a memory-mapped file, so that every service process on a host shares the same seat state for a
+ * show. Each concert date has its own file in ServiceConfig.SEAT_FILE_DIRECTORY, laid out as a header followed by a
+ * single SeatRegion. The header is written by the first process to open the file; a file without it, or written with
+ * another layout, has every seat freed at that point. Files are otherwise only reset when
+ * ServiceConfig.SEAT_FILE_RESET is set, since other processes may be using them.
+ *
+ * Every command holds an exclusive lock on the file while it runs, which makes claiming seats atomic across
+ * processes, and a seat claimed by one process is seen by the others as soon as the lock is released. Within a
+ * process, commands are also run through ShowSequencer and synchronized, because a process can only hold one lock on
+ * a file at a time. Each process still loads the show's bookings and reservations from the database on first use.
+ * Loading only ever takes seats: booked seats are marked booked, and a reservation only claims seats that are free
+ * (see ShowSeats.markReserved()). A process loading a show that another process has already loaded therefore can't
+ * free or un-book any seat the other process recorded.
+ */
+public class MappedShowSeats extends OffHeapShowSeats {
+
+    private static final String SUFFIX = ".seats";
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+
+    // Header of an initialised seat file: "SEAT" followed by the size of a SeatRegion, so that a file written with
+    // another layout isn't mistaken for one
+    private static final long HEADER = 0x53454154L << 32 | SeatRegion.SIZE;
+
+    private final FileChannel _channel;
+
+    private MappedShowSeats(FileChannel channel, MappedByteBuffer buffer) {
+        super(new SeatRegion(buffer, Long.BYTES));
+        _channel = channel;
+    }
+
+    /**
+     * Maps a show's seat file, creating it with every seat free if it doesn't exist yet or hasn't been initialised
+     * @param directory the directory holding the seat files
+     * @param key the show
+     * @return the show's seat state
+     */
+    public static MappedShowSeats open(File directory, ShowKey key) {
+        File file = new File(directory, key.getConcertId() + "_" + DATE_FORMAT.format(key.getDate()) + SUFFIX);
+        FileChannel channel = openChannel(file);
+        try {
+            MappedByteBuffer buffer = map(channel);
+            withFileLock(channel, () -> {
+                if (buffer.getLong(0) != HEADER) {
+                    reset(buffer);
+                }
+                return null;
+            });
+            return new MappedShowSeats(channel, buffer);
+        } catch (IOException e) {
+            try {
+                channel.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Frees every seat in every seat file. Processes using the files lose their seat state too, so this is only done
+     * when ServiceConfig.SEAT_FILE_RESET is set.
+     * @param directory the directory holding the seat files
+     */
+    public static void clearAll(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            try (FileChannel channel = openChannel(file)) {
+                MappedByteBuffer buffer = map(channel);
+                withFileLock(channel, () -> {
+                    reset(buffer);
+                    return null;
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized Set<SeatDTO> reserve(int numberOfSeats, PriceBand band, SeatAllocation allocation,
+                                             long holdId, LocalDateTime expiryDate) {
+        return withFileLock(_channel, () -> super.reserve(numberOfSeats, band, allocation, holdId, expiryDate));
+    }
+
+    @Override
+    public synchronized boolean book(Collection<SeatDTO> seats, long holdId, LocalDateTime expiryDate) {
+        return withFileLock(_channel, () -> super.book(seats, holdId, expiryDate));
+    }
+
+    @Override
+    public synchronized void unbook(Collection<SeatDTO> seats, long holdId, LocalDateTime expiryDate) {
+        withFileLock(_channel, () -> {
+            super.unbook(seats, holdId, expiryDate);
+            return null;
+        });
+    }
+
+    @Override
+    public synchronized void release(Collection<SeatDTO> seats, long holdId) {
+        withFileLock(_channel, () -> {
+            super.release(seats, holdId);
+            return null;
+        });
+    }
+
+    @Override
+    public synchronized void markBooked(int[] seatCodes) {
+        withFileLock(_channel, () -> {
+            super.markBooked(seatCodes);
+            return null;
+        });
+    }
+
+    @Override
+    public synchronized void markReserved(int[] seatCodes, long holdId, LocalDateTime expiryDate) {
+        withFileLock(_channel, () -> {
+            super.markReserved(seatCodes, holdId, expiryDate);
+            return null;
+        });
+    }
+
+    @Override
+    public synchronized int getNumberOfAvailableSeats(PriceBand band) {
+        return withFileLock(_channel, () -> super.getNumberOfAvailableSeats(band));
+    }
+
+    @Override
+    public synchronized void dispose() {
+        try {
+            _channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Runs a command while holding an exclusive lock on a seat file
+     */
+    private static <T> T withFileLock(FileChannel channel, Supplier<T> command) {
+        try {
+            FileLock lock = channel.lock();
+            try {
+                return command.get();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Frees every seat in a mapped seat file and writes its header. Must be called while holding the file's lock.
+     */
+    private static void reset(MappedByteBuffer buffer) {
+        new SeatRegion(buffer, Long.BYTES).clear();
+        buffer.putLong(0, HEADER);
+    }
+
+    private static FileChannel openChannel(File file) {
+        try {
+            file.getParentFile().mkdirs();
+            return new RandomAccessFile(file, "rw").getChannel();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Maps a seat file, growing it to the size of its header and a SeatRegion if necessary. New parts of the file are
+     * zeroes. The mapping stays valid after the channel is closed.
+     */
+    private static MappedByteBuffer map(FileChannel channel) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES + SeatRegion.SIZE);
+    }
+}
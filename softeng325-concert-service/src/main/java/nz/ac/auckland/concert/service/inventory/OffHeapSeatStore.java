@@ -0,0 +1,79 @@
+package nz.ac.auckland.concert.service.inventory;
+
+import nz.ac.auckland.concert.service.util.ServiceConfig;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Singleton class that keeps the seat state of every show outside the Java heap, in direct ByteBuffers. Each show is
+ * addressed by a compact int index and owns a SeatRegion of one buffer ("slab").
+ *
+ * Slabs hold ServiceConfig.OFF_HEAP_SHOWS_PER_SLAB shows each and are added as shows are allocated, so the heap only
+ * grows by one buffer reference per slab however many shows there are. Freed show indexes are reused.
+ */
+public class OffHeapSeatStore {
+
+    private static final OffHeapSeatStore _instance = new OffHeapSeatStore(ServiceConfig.OFF_HEAP_SHOWS_PER_SLAB);
+
+    private final int _showsPerSlab;
+
+    // Replaced rather than resized, so threads using existing shows never see a partly copied array
+    private volatile ByteBuffer[] _slabs = new ByteBuffer[0];
+
+    private int _nextShow = 0;
+    private final Deque<Integer> _freeShows = new ArrayDeque<>();
+
+    protected OffHeapSeatStore(int showsPerSlab) {
+        _showsPerSlab = showsPerSlab;
+    }
+
+    /**
+     * Allocates a region for a new show in which every seat is free
+     * @return the show's index
+     */
+    public synchronized int allocate() {
+        Integer show = _freeShows.poll();
+        if (show != null) {
+            return show;
+        }
+
+        if (_nextShow == _slabs.length * _showsPerSlab) {
+            ByteBuffer[] slabs = Arrays.copyOf(_slabs, _slabs.length + 1);
+            slabs[_slabs.length] = ByteBuffer.allocateDirect(_showsPerSlab * SeatRegion.SIZE);
+            _slabs = slabs;
+        }
+        return _nextShow++;
+    }
+
+    /**
+     * Frees a show's region for reuse. The show index must not be used afterwards.
+     * @param show the show's index
+     */
+    public synchronized void free(int show) {
+        getRegion(show).clear();
+        _freeShows.push(show);
+    }
+
+    /**
+     * Returns the region holding a show's seat state
+     * @param show the show's index
+     * @return the show's region
+     */
+    public SeatRegion getRegion(int show) {
+        return new SeatRegion(_slabs[show / _showsPerSlab], show % _showsPerSlab * SeatRegion.SIZE);
+    }
+
+    /**
+     * Returns the number of bytes of off-heap memory allocated for shows
+     */
+    public long getAllocatedBytes() {
+        return (long) _slabs.length * _showsPerSlab * SeatRegion.SIZE;
+    }
+
+    public static OffHeapSeatStore instance() {
+        return _instance;
+    }
+}
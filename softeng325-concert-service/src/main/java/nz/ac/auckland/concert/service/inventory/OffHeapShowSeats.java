@@ -0,0 +1,251 @@
+package nz.ac.auckland.concert.service.inventory;
+
+import nz.ac.auckland.concert.common.dto.SeatDTO;
+import nz.ac.auckland.concert.common.types.PriceBand;
+import nz.ac.auckland.concert.common.types.SeatAllocation;
+import nz.ac.auckland.concert.service.domain.jpa.SeatConverter;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * ShowSeats held in a SeatRegion outside the Java heap, so the only heap used per show is this object. Expiry dates
+ * are stored as epoch milliseconds alongside each seat's hold id, and expired reservations are found by scanning a
+ * band's expiries rather than by keeping a queue of reservations on the heap.
+ *
+ * Like BitmapShowSeats, shows using this class are updated through ShowSequencer and all methods are synchronized.
+ */
+public class OffHeapShowSeats implements ShowSeats {
+
+    private final SeatRegion _region;
+    private final Runnable _disposer;
+
+    /**
+     * Creates seat state in a newly allocated region of an OffHeapSeatStore
+     */
+    public OffHeapShowSeats(OffHeapSeatStore store) {
+        int show = store.allocate();
+        _region = store.getRegion(show);
+        _disposer = () -> store.free(show);
+    }
+
+    /**
+     * Creates seat state in an existing region, which is not freed when the show is disposed of
+     */
+    protected OffHeapShowSeats(SeatRegion region) {
+        _region = region;
+        _disposer = () -> {};
+    }
+
+    @Override
+    public synchronized Set<SeatDTO> reserve(int numberOfSeats, PriceBand band, SeatAllocation allocation,
+                                             long holdId, LocalDateTime expiryDate) {
+        releaseExpired(band, toMillis(LocalDateTime.now()));
+
+        int[] slots;
+        if (_region.countFree(band) < numberOfSeats) {
+            slots = null;
+        } else if (allocation == SeatAllocation.Contiguous) {
+            slots = findContiguousSeats(numberOfSeats, band);
+        } else if (allocation == SeatAllocation.BestAvailable) {
+            slots = findBestSeats(numberOfSeats, band);
+        } else {
+            slots = findAnySeats(numberOfSeats, band);
+        }
+
+        if (slots == null) {
+            return new HashSet<>();
+        }
+        Set<SeatDTO> seats = new HashSet<>();
+        for (int slot : slots) {
+            _region.claim(band, slot);
+            hold(band, slot, holdId, expiryDate);
+            seats.add(SeatLayout.getSeat(band, slot));
+        }
+        return seats;
+    }
+
+    @Override
+    public synchronized boolean book(Collection<SeatDTO> seats, long holdId, LocalDateTime expiryDate) {
+        for (SeatDTO seat : seats) {
+            int slot = SeatLayout.getSlot(seat);
+            if (slot < 0 || !isHeldBy(SeatLayout.getPriceBand(seat.getRow()), slot, holdId)) {
+                return false;
+            }
+        }
+
+        // Booked seats keep their hold id, so that unbook() only puts back seats this reservation booked
+        for (SeatDTO seat : seats) {
+            setBooked(SeatLayout.getPriceBand(seat.getRow()), SeatLayout.getSlot(seat), holdId);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void unbook(Collection<SeatDTO> seats, long holdId, LocalDateTime expiryDate) {
+        for (SeatDTO seat : seats) {
+            int slot = SeatLayout.getSlot(seat);
+            PriceBand band = SeatLayout.getPriceBand(seat.getRow());
+            if (slot >= 0 && _region.getExpiry(band, slot) == SeatRegion.BOOKED &&
+                    _region.getHolder(band, slot) == holdId) {
+                _region.setExpiry(band, slot, toMillis(expiryDate));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void release(Collection<SeatDTO> seats, long holdId) {
+        for (SeatDTO seat : seats) {
+            int slot = SeatLayout.getSlot(seat);
+            PriceBand band = SeatLayout.getPriceBand(seat.getRow());
+            if (slot >= 0 && isHeldBy(band, slot, holdId)) {
+                _region.release(band, slot);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void markBooked(int[] seatCodes) {
+        for (int seatCode : seatCodes) {
+            int slot = SeatLayout.getSlot(seatCode);
+            if (slot >= 0) {
+                setBooked(SeatLayout.getPriceBand(SeatConverter.rowOf(seatCode)), slot, SeatRegion.FREE);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void markReserved(int[] seatCodes, long holdId, LocalDateTime expiryDate) {
+        for (int seatCode : seatCodes) {
+            int slot = SeatLayout.getSlot(seatCode);
+            if (slot >= 0) {
+                PriceBand band = SeatLayout.getPriceBand(SeatConverter.rowOf(seatCode));
+
+                // A slot that can't be claimed is already booked or reserved, so leave its expiry alone
+                if (_region.claim(band, slot)) {
+                    hold(band, slot, holdId, expiryDate);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized int getNumberOfAvailableSeats(PriceBand band) {
+        releaseExpired(band, toMillis(LocalDateTime.now()));
+        return _region.countFree(band);
+    }
+
+    @Override
+    public synchronized void dispose() {
+        _disposer.run();
+    }
+
+    /**
+     * Records a claimed seat as held by a reservation
+     */
+    private void hold(PriceBand band, int slot, long holdId, LocalDateTime expiryDate) {
+        _region.setExpiry(band, slot, toMillis(expiryDate));
+        _region.setHolder(band, slot, holdId);
+    }
+
+    /**
+     * Records a seat as booked
+     * @param holdId the hold id of the reservation that booked the seat, or SeatRegion.FREE
+     */
+    private void setBooked(PriceBand band, int slot, long holdId) {
+        _region.claim(band, slot);
+        _region.setExpiry(band, slot, SeatRegion.BOOKED);
+        _region.setHolder(band, slot, holdId);
+    }
+
+    /**
+     * Returns whether a seat is reserved, rather than booked, by a given reservation
+     */
+    private boolean isHeldBy(PriceBand band, int slot, long holdId) {
+        return _region.getHolder(band, slot) == holdId && _region.getExpiry(band, slot) != SeatRegion.BOOKED;
+    }
+
+    /**
+     * Picks free slots from a random start, wrapping around the end of the band
+     */
+    private int[] findAnySeats(int numberOfSeats, PriceBand band) {
+        int size = SeatLayout.getNumberOfSeats(band);
+        int[] slots = new int[numberOfSeats];
+        int found = 0;
+
+        int start = ThreadLocalRandom.current().nextInt(size);
+        for (int i = 0; i < size && found < numberOfSeats; i++) {
+            int slot = (start + i) % size;
+            if (!_region.isClaimed(band, slot)) {
+                slots[found++] = slot;
+            }
+        }
+        return found == numberOfSeats ? slots : null;
+    }
+
+    /**
+     * Picks the first run of adjacent free slots in a single row that is long enough
+     */
+    private int[] findContiguousSeats(int numberOfSeats, PriceBand band) {
+        int size = SeatLayout.getNumberOfSeats(band);
+        int start = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (_region.isClaimed(band, slot)) {
+                start = slot + 1;
+                continue;
+            }
+            if (!sameRow(band, start, slot)) {
+                start = slot;
+            }
+            if (slot - start + 1 == numberOfSeats) {
+                int[] slots = new int[numberOfSeats];
+                for (int i = 0; i < numberOfSeats; i++) {
+                    slots[i] = start + i;
+                }
+                return slots;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Picks the best free slots in the band, visiting seats in rank order
+     */
+    private int[] findBestSeats(int numberOfSeats, PriceBand band) {
+        int size = SeatLayout.getNumberOfSeats(band);
+        int[] slots = new int[numberOfSeats];
+        int found = 0;
+
+        for (int rank = 0; rank < size && found < numberOfSeats; rank++) {
+            int slot = SeatLayout.getSlotAtRank(band, rank);
+            if (!_region.isClaimed(band, slot)) {
+                slots[found++] = slot;
+            }
+        }
+        return found == numberOfSeats ? slots : null;
+    }
+
+    /**
+     * Frees every seat in a band whose reservation expired before a given time
+     */
+    private void releaseExpired(PriceBand band, long now) {
+        for (int slot = 0; slot < SeatLayout.getNumberOfSeats(band); slot++) {
+            long expiry = _region.getExpiry(band, slot);
+            if (expiry != SeatRegion.FREE && expiry < now) {
+                _region.release(band, slot);
+            }
+        }
+    }
+
+    private boolean sameRow(PriceBand band, int slot, int other) {
+        return SeatLayout.getSeat(band, slot).getRow() == SeatLayout.getSeat(band, other).getRow();
+    }
+
+    private static long toMillis(LocalDateTime date) {
+        return date.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
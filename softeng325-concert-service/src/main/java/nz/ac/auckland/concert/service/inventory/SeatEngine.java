@@ -0,0 +1,78 @@
+package nz.ac.auckland.concert.service.inventory;
+
+import nz.ac.auckland.concert.service.util.ServiceConfig;
+
+import java.io.File;
+
+/**
+ * Enumerated type for the implementations of ShowSeats that the Web service can use. The engine is chosen with
+ * ServiceConfig.SEAT_ENGINE.
+ *
+ * Bitmap     seat state is held in plain bitmaps and every command on a show runs on the show's ShowSequencer lane.
+ * Atomic     seat state is held in atomic bitmaps and seats are claimed by compare-and-set, so commands on a show
+ *            run on the calling thread and never wait for each other.
+ * OffHeap    seat state is held in the OffHeapSeatStore, outside the Java heap, and every command on a show runs on
+ *            the show's ShowSequencer lane.
+ * Mapped     seat state is held in a memory-mapped file per show that is shared by every service process on the host,
+ *            and every command on a show runs on the show's ShowSequencer lane while holding a lock on the file.
+ */
+public enum SeatEngine {
+
+    Bitmap(true) {
+        @Override
+        public ShowSeats createShow(ShowKey key) {
+            return new BitmapShowSeats();
+        }
+    },
+
+    Atomic(false) {
+        @Override
+        public ShowSeats createShow(ShowKey key) {
+            return new AtomicShowSeats();
+        }
+    },
+
+    OffHeap(true) {
+        @Override
+        public ShowSeats createShow(ShowKey key) {
+            return new OffHeapShowSeats(OffHeapSeatStore.instance());
+        }
+    },
+
+    Mapped(true) {
+        @Override
+        public ShowSeats createShow(ShowKey key) {
+            return MappedShowSeats.open(new File(ServiceConfig.SEAT_FILE_DIRECTORY), key);
+        }
+
+        @Override
+        public void reset() {
+            MappedShowSeats.clearAll(new File(ServiceConfig.SEAT_FILE_DIRECTORY));
+        }
+    };
+
+    private final boolean _sequenced;
+
+    SeatEngine(boolean sequenced) {
+        _sequenced = sequenced;
+    }
+
+    /**
+     * Creates the seat state for a show in which every seat is free
+     * @param key the show
+     */
+    public abstract ShowSeats createShow(ShowKey key);
+
+    /**
+     * Discards any seat state kept outside of the service process. Every other process using that state loses it
+     * too, so this is only called when ServiceConfig.SEAT_FILE_RESET is set.
+     */
+    public void reset() {}
+
+    /**
+     * Returns whether commands on this engine's shows must be run one at a time through ShowSequencer
+     */
+    public boolean isSequenced() {
+        return _sequenced;
+    }
+}
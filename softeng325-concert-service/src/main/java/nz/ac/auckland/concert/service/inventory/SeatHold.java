@@ -0,0 +1,141 @@
+package nz.ac.auckland.concert.service.inventory;
+
+import nz.ac.auckland.concert.common.dto.ReservationDTO;
+import nz.ac.auckland.concert.common.dto.ReservationRequestDTO;
+import nz.ac.auckland.concert.common.dto.SeatDTO;
+import nz.ac.auckland.concert.common.types.PriceBand;
+import nz.ac.auckland.concert.common.types.SeatNumber;
+import nz.ac.auckland.concert.service.auth.TokenSigner;
+import nz.ac.auckland.concert.service.domain.jpa.SeatConverter;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Class to represent seats held for a client in the Signed reservation mode. A hold only exists in the show's
+ * in-memory seat state and in a hold token given to the client; nothing is written to the database until the hold is
+ * confirmed. The token is signed by TokenSigner and carries everything needed to book the seats:
+ *
+ *     hold id ";" concert id ";" date ";" price band ";" expiry (epoch millis) ";" seat codes ";" username
+ *
+ * so a client can't change the seats, show or expiry of a hold, or confirm a hold made for another user.
+ */
+public class SeatHold {
+
+    private static final String PURPOSE = "seat-hold";
+    private static final String SEPARATOR = ";";
+    private static final String CODE_SEPARATOR = ",";
+
+    private final Long _id;
+    private final Long _concertId;
+    private final LocalDateTime _date;
+    private final PriceBand _seatType;
+    private final LocalDateTime _expiryDate;
+    private final int[] _seatCodes;
+    private final String _username;
+
+    private SeatHold(Long id, Long concertId, LocalDateTime date, PriceBand seatType, LocalDateTime expiryDate,
+                     int[] seatCodes, String username) {
+        _id = id;
+        _concertId = concertId;
+        _date = date;
+        _seatType = seatType;
+        _expiryDate = expiryDate;
+        _seatCodes = seatCodes;
+        _username = username;
+    }
+
+    /**
+     * Creates a hold on seats that have been reserved in a show's seat state, and a reservation carrying its token
+     * @param id the hold id the seats were reserved under (see ShowSeats.newHoldId())
+     * @param request the reservation request the seats were reserved for
+     * @param username the user the seats were reserved for
+     * @param seats the reserved seats
+     * @param expiryDate when the seats' reservation expires
+     * @param holdSeconds how long the seats are held for
+     * @return the reservation to send the client
+     */
+    public static ReservationDTO issue(long id, ReservationRequestDTO request, String username, Set<SeatDTO> seats,
+                                       LocalDateTime expiryDate, int holdSeconds) {
+        long expiryMillis = expiryDate.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        StringBuilder subject = new StringBuilder()
+                .append(id).append(SEPARATOR)
+                .append(request.getConcertId()).append(SEPARATOR)
+                .append(request.getDate()).append(SEPARATOR)
+                .append(request.getSeatType().name()).append(SEPARATOR)
+                .append(expiryMillis).append(SEPARATOR);
+        String separator = "";
+        for (SeatDTO seat : seats) {
+            subject.append(separator).append(SeatConverter.toCode(seat.getRow(), seat.getNumber().intValue()));
+            separator = CODE_SEPARATOR;
+        }
+        subject.append(SEPARATOR).append(username);
+
+        // The token stays valid until the end of the second the hold expires in
+        String token = TokenSigner.instance().sign(PURPOSE, subject.toString(),
+                Math.floorDiv(expiryMillis + 999, 1000));
+        return new ReservationDTO(id, request, seats, holdSeconds, token);
+    }
+
+    /**
+     * Checks a hold token
+     * @param token value of the token
+     * @return the hold, or null if the token is malformed, has been tampered with or has expired
+     */
+    public static SeatHold verify(String token) {
+        String subject = TokenSigner.instance().verify(PURPOSE, token);
+        if (subject == null) {
+            return null;
+        }
+
+        String[] parts = subject.split(SEPARATOR, 7);
+        if (parts.length != 7) {
+            return null;
+        }
+        String[] codes = parts[5].split(CODE_SEPARATOR);
+        int[] seatCodes = new int[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            seatCodes[i] = Integer.parseInt(codes[i]);
+        }
+        return new SeatHold(Long.valueOf(parts[0]), Long.valueOf(parts[1]), LocalDateTime.parse(parts[2]),
+                PriceBand.valueOf(parts[3]),
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(parts[4])), ZoneId.systemDefault()),
+                seatCodes, parts[6]);
+    }
+
+    public Long getId() {
+        return _id;
+    }
+
+    public Long getConcertId() {
+        return _concertId;
+    }
+
+    public LocalDateTime getDate() {
+        return _date;
+    }
+
+    public PriceBand getSeatType() {
+        return _seatType;
+    }
+
+    public LocalDateTime getExpiryDate() {
+        return _expiryDate;
+    }
+
+    public String getUsername() {
+        return _username;
+    }
+
+    public Set<SeatDTO> getSeats() {
+        Set<SeatDTO> seats = new HashSet<>();
+        for (int seatCode : _seatCodes) {
+            seats.add(new SeatDTO(SeatConverter.rowOf(seatCode), new SeatNumber(SeatConverter.numberOf(seatCode))));
+        }
+        return seats;
+    }
+}
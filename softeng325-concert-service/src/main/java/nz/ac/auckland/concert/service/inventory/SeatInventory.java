@@ -0,0 +1,98 @@
+package nz.ac.auckland.concert.service.inventory;
+
+import nz.ac.auckland.concert.service.util.ServiceConfig;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Singleton class that holds the in-memory seat state (a ShowSeats object) of every concert date. The database
+ * remains the system of record: a show's seat state is loaded from the database the first time it is used, and from
+ * then on reservations and bookings update both. Seat state is created by the SeatEngine named in ServiceConfig.
+ */
+public class SeatInventory {
+
+    private static final SeatInventory _instance = new SeatInventory(ServiceConfig.SEAT_ENGINE);
+
+    private final SeatEngine _engine;
+
+    private final ConcurrentMap<ShowKey, ShowSeats> _shows = new ConcurrentHashMap<>();
+
+    // Shows whose seat state has been loaded from the database
+    private final Set<ShowKey> _loaded = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Callback used to populate a show's seat state from the database
+     */
+    public interface Loader {
+        void load(ShowSeats show);
+    }
+
+    protected SeatInventory(SeatEngine engine) {
+        _engine = engine;
+    }
+
+    /**
+     * Returns the seat state of a concert date, loading it on first use
+     * @param concertId ID of the concert
+     * @param date date of the performance
+     * @param loader populates the seat state if it has not been loaded yet
+     * @return the show's seat state
+     */
+    public ShowSeats getShow(Long concertId, LocalDateTime date, Loader loader) {
+        ShowKey key = new ShowKey(concertId, date);
+        ShowSeats show = _shows.computeIfAbsent(key, k -> _engine.createShow(k));
+
+        if (!_loaded.contains(key)) {
+            synchronized (show) {
+                if (!_loaded.contains(key)) {
+                    loader.load(show);
+                    _loaded.add(key);
+                }
+            }
+        }
+        return show;
+    }
+
+    /**
+     * Runs a command that updates a show's seat state. Commands are run on the show's ShowSequencer lane if the seat
+     * engine needs a single writer per show, and on the calling thread otherwise.
+     * @param key the show whose seat state the command uses
+     * @param command the command to run
+     * @return the command's result
+     */
+    public <T> T execute(ShowKey key, Callable<T> command) {
+        if (_engine.isSequenced()) {
+            return ShowSequencer.instance().execute(key, command);
+        }
+
+        try {
+            return command.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Discards the process's seat state. Must be called whenever reservations and bookings are removed from the
+     * database. Seat state shared with other processes is left alone (see SeatEngine.reset()).
+     */
+    public void clear() {
+        _loaded.clear();
+        for (ShowKey key : _shows.keySet()) {
+            ShowSeats show = _shows.remove(key);
+            if (show != null) {
+                show.dispose();
+            }
+        }
+    }
+
+    public static SeatInventory instance() {
+        return _instance;
+    }
+}
@@ -0,0 +1,166 @@
+package nz.ac.auckland.concert.service.inventory;
+
+import nz.ac.auckland.concert.common.dto.SeatDTO;
+import nz.ac.auckland.concert.common.types.PriceBand;
+import nz.ac.auckland.concert.common.types.SeatNumber;
+import nz.ac.auckland.concert.common.types.SeatRow;
+import nz.ac.auckland.concert.service.domain.jpa.SeatConverter;
+import nz.ac.auckland.concert.utility.TheatreLayout;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Precomputed view of TheatreLayout that gives every seat in a price band a fixed slot number. Slots are ordered by
+ * row and then by seat number, so a price band's seats can be held in a bitmap indexed by slot.
+ *
+ * Each seat also has a rank within its band: rank 0 is the best seat, i.e. the one closest to the front row of the
+ * band and the centre of its row.
+ */
+public class SeatLayout {
+
+    // Seats in each price band, indexed by [band ordinal][slot]
+    private static final SeatDTO[][] _seatsByBand = new SeatDTO[PriceBand.values().length][];
+
+    // First slot of each row within its price band, indexed by row ordinal
+    private static final int[] _rowOffsets = new int[SeatRow.values().length];
+
+    // Price band of each row, indexed by row ordinal. Rows that are not in any price band are null.
+    private static final PriceBand[] _bandsByRow = new PriceBand[SeatRow.values().length];
+
+    // Slots of each price band in rank order, indexed by [band ordinal][rank]
+    private static final int[][] _slotsByRank = new int[PriceBand.values().length][];
+
+    // Rank of each slot, indexed by [band ordinal][slot]
+    private static final int[][] _ranksBySlot = new int[PriceBand.values().length][];
+
+    static {
+        for (PriceBand band : PriceBand.values()) {
+
+            // Order the rows in the band so slots are stable
+            List<SeatRow> rows = new ArrayList<>(TheatreLayout.getRowsForPriceBand(band));
+            Collections.sort(rows);
+
+            List<SeatDTO> seats = new ArrayList<>();
+            for (SeatRow row : rows) {
+                _bandsByRow[row.ordinal()] = band;
+                _rowOffsets[row.ordinal()] = seats.size();
+                for (int i = 1; i <= TheatreLayout.getNumberOfSeatsForRow(row); i++) {
+                    seats.add(new SeatDTO(row, new SeatNumber(i)));
+                }
+            }
+            _seatsByBand[band.ordinal()] = seats.toArray(new SeatDTO[seats.size()]);
+
+            rankSeats(band, rows);
+        }
+    }
+
+    /**
+     * Ranks the seats in a band by their distance from the centre of the band's front row, measured in seats
+     */
+    private static void rankSeats(PriceBand band, List<SeatRow> rows) {
+        int size = getNumberOfSeats(band);
+        double[] distances = new double[size];
+        for (int slot = 0; slot < size; slot++) {
+            SeatDTO seat = getSeat(band, slot);
+            double centre = (TheatreLayout.getNumberOfSeatsForRow(seat.getRow()) + 1) / 2.0;
+            distances[slot] = Math.hypot(seat.getNumber().intValue() - centre, rows.indexOf(seat.getRow()));
+        }
+
+        List<Integer> slots = new ArrayList<>();
+        for (int slot = 0; slot < size; slot++) {
+            slots.add(slot);
+        }
+        slots.sort((a, b) -> Double.compare(distances[a], distances[b]));
+
+        _slotsByRank[band.ordinal()] = new int[size];
+        _ranksBySlot[band.ordinal()] = new int[size];
+        for (int rank = 0; rank < size; rank++) {
+            _slotsByRank[band.ordinal()][rank] = slots.get(rank);
+            _ranksBySlot[band.ordinal()][slots.get(rank)] = rank;
+        }
+    }
+
+    // This is utility class, so hide the constructor to prevent instantiation.
+    private SeatLayout() {}
+
+    /**
+     * Returns the number of seats in a price band
+     * @param band the price band
+     * @return number of slots in the band
+     */
+    public static int getNumberOfSeats(PriceBand band) {
+        return _seatsByBand[band.ordinal()].length;
+    }
+
+    /**
+     * Returns the seat occupying a slot in a price band
+     * @param band the price band
+     * @param slot index of the seat within the band
+     * @return the seat
+     */
+    public static SeatDTO getSeat(PriceBand band, int slot) {
+        return _seatsByBand[band.ordinal()][slot];
+    }
+
+    /**
+     * Returns the slot of the seat with a given rank in a price band
+     * @param band the price band
+     * @param rank rank of the seat, where 0 is the best seat in the band
+     * @return the seat's slot
+     */
+    public static int getSlotAtRank(PriceBand band, int rank) {
+        return _slotsByRank[band.ordinal()][rank];
+    }
+
+    /**
+     * Returns the rank of the seat occupying a slot in a price band
+     * @param band the price band
+     * @param slot index of the seat within the band
+     * @return rank of the seat, where 0 is the best seat in the band
+     */
+    public static int getRank(PriceBand band, int slot) {
+        return _ranksBySlot[band.ordinal()][slot];
+    }
+
+    /**
+     * Returns the slot a seat occupies within its price band
+     * @param seat the seat
+     * @return index of the seat within its band, or -1 if the seat is not in any price band
+     */
+    public static int getSlot(SeatDTO seat) {
+        return getSlot(seat.getRow(), seat.getNumber().intValue());
+    }
+
+    /**
+     * Returns the slot a seat occupies within its price band
+     * @param seatCode the seat, as a seat code (see SeatConverter)
+     * @return index of the seat within its band, or -1 if the seat is not in any price band
+     */
+    public static int getSlot(int seatCode) {
+        return getSlot(SeatConverter.rowOf(seatCode), SeatConverter.numberOf(seatCode));
+    }
+
+    /**
+     * Returns the slot a seat occupies within its price band
+     * @param row row of the seat
+     * @param number number of the seat within the row
+     * @return index of the seat within its band, or -1 if the seat is not in any price band
+     */
+    public static int getSlot(SeatRow row, int number) {
+        if (_bandsByRow[row.ordinal()] == null || number < 1 || number > TheatreLayout.getNumberOfSeatsForRow(row)) {
+            return -1;
+        }
+        return _rowOffsets[row.ordinal()] + number - 1;
+    }
+
+    /**
+     * Returns the price band a row belongs to
+     * @param row the row
+     * @return the row's price band, or null if the row is not in any price band
+     */
+    public static PriceBand getPriceBand(SeatRow row) {
+        return _bandsByRow[row.ordinal()];
+    }
+}
@@ -0,0 +1,164 @@
+package nz.ac.auckland.concert.service.inventory;
+
+import nz.ac.auckland.concert.common.types.PriceBand;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The seat state of one show, laid out in a fixed-size region of a ByteBuffer. For each price band the region holds a
+ * bitmap with one bit per seat slot (see SeatLayout), followed by one long per slot recording when the seat's
+ * reservation expires (in epoch milliseconds, FREE or BOOKED) and one long per slot recording the hold id of the
+ * seat's reservation (see ShowSeats), or FREE. A region of zeroes has every seat free.
+ *
+ * A region does no locking of its own, so it must only be used by one thread at a time.
+ */
+public class SeatRegion {
+
+    // Expiry of a free seat
+    public static final long FREE = 0;
+
+    // Expiry of a booked seat, which never expires
+    public static final long BOOKED = Long.MAX_VALUE;
+
+    // Size in bytes of a region
+    public static final int SIZE;
+
+    // Offsets within a region of each band's bitmap, expiries and holders, indexed by band ordinal
+    private static final int[] _bitsOffsets = new int[PriceBand.values().length];
+    private static final int[] _expiryOffsets = new int[PriceBand.values().length];
+    private static final int[] _holderOffsets = new int[PriceBand.values().length];
+
+    static {
+        int offset = 0;
+        for (PriceBand band : PriceBand.values()) {
+            int size = SeatLayout.getNumberOfSeats(band);
+            _bitsOffsets[band.ordinal()] = offset;
+            offset += (size + Long.SIZE - 1) / Long.SIZE * Long.BYTES;
+            _expiryOffsets[band.ordinal()] = offset;
+            offset += size * Long.BYTES;
+            _holderOffsets[band.ordinal()] = offset;
+            offset += size * Long.BYTES;
+        }
+        SIZE = offset;
+    }
+
+    private final ByteBuffer _buffer;
+    private final int _base;
+
+    /**
+     * @param buffer the buffer holding the region
+     * @param base offset of the region within the buffer
+     */
+    public SeatRegion(ByteBuffer buffer, int base) {
+        _buffer = buffer;
+        _base = base;
+    }
+
+    /**
+     * Marks a seat as taken
+     * @param band the seat's price band
+     * @param slot the seat's slot within the band
+     * @return true if the seat was free and has been claimed by this call
+     */
+    public boolean claim(PriceBand band, int slot) {
+        int word = wordOf(band, slot);
+        long bits = _buffer.getLong(word);
+        if ((bits & maskOf(slot)) != 0) {
+            return false;
+        }
+        _buffer.putLong(word, bits | maskOf(slot));
+        return true;
+    }
+
+    /**
+     * Marks a seat as free and clears its expiry and holder
+     * @param band the seat's price band
+     * @param slot the seat's slot within the band
+     */
+    public void release(PriceBand band, int slot) {
+        int word = wordOf(band, slot);
+        _buffer.putLong(word, _buffer.getLong(word) & ~maskOf(slot));
+        _buffer.putLong(expiryOf(band, slot), FREE);
+        _buffer.putLong(holderOf(band, slot), FREE);
+    }
+
+    /**
+     * Returns whether a seat is taken
+     */
+    public boolean isClaimed(PriceBand band, int slot) {
+        return (_buffer.getLong(wordOf(band, slot)) & maskOf(slot)) != 0;
+    }
+
+    /**
+     * Returns the number of free seats in a price band
+     * @param band the price band
+     * @return number of seats that are not taken
+     */
+    public int countFree(PriceBand band) {
+        int size = SeatLayout.getNumberOfSeats(band);
+        int bits = _base + _bitsOffsets[band.ordinal()];
+
+        int taken = 0;
+        for (int i = 0; i < (size + Long.SIZE - 1) / Long.SIZE; i++) {
+            taken += Long.bitCount(_buffer.getLong(bits + i * Long.BYTES));
+        }
+        return size - taken;
+    }
+
+    /**
+     * Returns when a seat's reservation expires
+     * @return the expiry in epoch milliseconds, FREE or BOOKED
+     */
+    public long getExpiry(PriceBand band, int slot) {
+        return _buffer.getLong(expiryOf(band, slot));
+    }
+
+    /**
+     * Records when a seat's reservation expires
+     * @param expiry the expiry in epoch milliseconds, or BOOKED
+     */
+    public void setExpiry(PriceBand band, int slot, long expiry) {
+        _buffer.putLong(expiryOf(band, slot), expiry);
+    }
+
+    /**
+     * Returns the hold id of a seat's reservation
+     * @return the hold id, or FREE if the seat isn't held by a reservation
+     */
+    public long getHolder(PriceBand band, int slot) {
+        return _buffer.getLong(holderOf(band, slot));
+    }
+
+    /**
+     * Records the hold id of a seat's reservation
+     * @param holdId the hold id, or FREE
+     */
+    public void setHolder(PriceBand band, int slot, long holdId) {
+        _buffer.putLong(holderOf(band, slot), holdId);
+    }
+
+    /**
+     * Frees every seat in the region
+     */
+    public void clear() {
+        for (int i = 0; i < SIZE; i += Long.BYTES) {
+            _buffer.putLong(_base + i, 0);
+        }
+    }
+
+    private int wordOf(PriceBand band, int slot) {
+        return _base + _bitsOffsets[band.ordinal()] + slot / Long.SIZE * Long.BYTES;
+    }
+
+    private long maskOf(int slot) {
+        return 1L << (slot % Long.SIZE);
+    }
+
+    private int expiryOf(PriceBand band, int slot) {
+        return _base + _expiryOffsets[band.ordinal()] + slot * Long.BYTES;
+    }
+
+    private int holderOf(PriceBand band, int slot) {
+        return _base + _holderOffsets[band.ordinal()] + slot * Long.BYTES;
+    }
+}
@@ -0,0 +1,55 @@
+package nz.ac.auckland.concert.service.inventory;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+import java.time.LocalDateTime;
+
+/**
+ * Identifies a single performance of a concert, i.e. a concert on a particular date.
+ */
+public class ShowKey {
+
+    private final Long _concertId;
+    private final LocalDateTime _date;
+
+    public ShowKey(Long concertId, LocalDateTime date) {
+        _concertId = concertId;
+        _date = date;
+    }
+
+    public Long getConcertId() {
+        return _concertId;
+    }
+
+    public LocalDateTime getDate() {
+        return _date;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ShowKey))
+            return false;
+        if (obj == this)
+            return true;
+
+        ShowKey rhs = (ShowKey) obj;
+        return new EqualsBuilder().
+                append(_concertId, rhs._concertId).
+                append(_date, rhs._date).
+                isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder(17, 31).
+                append(_concertId).
+                append(_date).
+                hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return _concertId + "@" + _date;
+    }
+}
@@ -0,0 +1,97 @@
+package nz.ac.auckland.concert.service.inventory;
+
+import nz.ac.auckland.concert.common.dto.SeatDTO;
+import nz.ac.auckland.concert.common.types.PriceBand;
+import nz.ac.auckland.concert.common.types.SeatAllocation;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * In-memory seat state for a single concert date. Seats are either free, reserved until an expiry date, or booked.
+ * Implementations are created by a SeatEngine, which also decides whether commands on a show must be run through
+ * ShowSequencer (see SeatInventory.execute()).
+ *
+ * Each reservation's seats are held under a hold id (see newHoldId()), which is the id of the reservation's
+ * Reservation row or SeatHold. Reservations made at the same time can share an expiry date, so only the hold id
+ * decides which reservation may book, unbook or release a seat.
+ */
+public interface ShowSeats {
+
+    /**
+     * Returns a new random hold id. Hold ids are always positive.
+     */
+    static long newHoldId() {
+        return ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    }
+
+    /**
+     * Attempts to reserve a number of seats in a price band. Seats from reservations that have expired are freed
+     * first.
+     * @param numberOfSeats the number of seats required
+     * @param band the price band to reserve from
+     * @param allocation how the seats are chosen
+     * @param holdId the reservation's hold id
+     * @param expiryDate when the reservation expires
+     * @return the reserved seats, or the empty set if there are not enough seats available
+     */
+    Set<SeatDTO> reserve(int numberOfSeats, PriceBand band, SeatAllocation allocation, long holdId,
+                         LocalDateTime expiryDate);
+
+    /**
+     * Converts reserved seats into booked seats.
+     * @param seats the reserved seats
+     * @param holdId the hold id of the reservation holding the seats
+     * @param expiryDate when the reservation holding the seats expires
+     * @return true if every seat was still held by the reservation, false if any seat has been freed, booked or
+     * reserved again by another reservation. Seats are only booked when this method returns true.
+     */
+    boolean book(Collection<SeatDTO> seats, long holdId, LocalDateTime expiryDate);
+
+    /**
+     * Undoes book(), putting booked seats back under the reservation that held them, e.g. when the booking could not
+     * be persisted. The seats are freed once the reservation expires.
+     * @param seats the booked seats
+     * @param holdId the hold id of the reservation that held the seats
+     * @param expiryDate when the reservation that held the seats expires
+     */
+    void unbook(Collection<SeatDTO> seats, long holdId, LocalDateTime expiryDate);
+
+    /**
+     * Frees reserved seats, e.g. when the reservation holding them could not be persisted. Seats that are booked or
+     * held by another reservation are left untouched.
+     * @param seats the seats to free
+     * @param holdId the hold id of the reservation holding the seats
+     */
+    void release(Collection<SeatDTO> seats, long holdId);
+
+    /**
+     * Records seats as booked. Used when loading the show's state from the database.
+     * @param seatCodes the booked seats, as seat codes (see SeatConverter)
+     */
+    void markBooked(int[] seatCodes);
+
+    /**
+     * Records seats as reserved until an expiry date. Used when loading the show's state from the database. Seats
+     * that are already booked or reserved are left as they are, so a confirmed reservation whose row hasn't been
+     * deleted yet can't make its booked seats expire.
+     * @param seatCodes the reserved seats, as seat codes (see SeatConverter)
+     * @param holdId the reservation's hold id
+     * @param expiryDate when the reservation expires
+     */
+    void markReserved(int[] seatCodes, long holdId, LocalDateTime expiryDate);
+
+    /**
+     * Returns the number of seats in a price band that are neither reserved nor booked
+     * @param band the price band
+     * @return number of available seats
+     */
+    int getNumberOfAvailableSeats(PriceBand band);
+
+    /**
+     * Gives back any memory held outside the Java heap. The seat state must not be used afterwards.
+     */
+    default void dispose() {}
+}
@@ -0,0 +1,60 @@
+package nz.ac.auckland.concert.service.inventory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Singleton class that runs seat commands (reserve, book, release) one at a time per concert date. Each show is
+ * assigned to one of a fixed number of single-threaded lanes, so a show's seat state only ever has one writer and
+ * commands for it never contend with each other. Different shows are spread across lanes and run in parallel.
+ */
+public class ShowSequencer {
+
+    private static final ShowSequencer _instance = new ShowSequencer(Runtime.getRuntime().availableProcessors());
+
+    private final ExecutorService[] _lanes;
+
+    protected ShowSequencer(int numberOfLanes) {
+        _lanes = new ExecutorService[numberOfLanes];
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        for (int i = 0; i < numberOfLanes; i++) {
+            _lanes[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "show-sequencer-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Runs a command on a show's lane and waits for its result
+     * @param show the show whose seat state the command uses
+     * @param command the command to run
+     * @return the command's result
+     */
+    public <T> T execute(ShowKey show, Callable<T> command) {
+        try {
+            return laneFor(show).submit(command).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ExecutorService laneFor(ShowKey show) {
+        return _lanes[Math.floorMod(show.hashCode(), _lanes.length)];
+    }
+
+    public static ShowSequencer instance() {
+        return _instance;
+    }
+}
@@ -2,10 +2,17 @@ package nz.ac.auckland.concert.service.services;
 
 import nz.ac.auckland.concert.common.jaxb.LocalDateAdapter;
 import nz.ac.auckland.concert.common.jaxb.LocalDateTimeAdapter;
+import nz.ac.auckland.concert.service.auth.TokenIndex;
+import nz.ac.auckland.concert.service.auth.UserDirectory;
+import nz.ac.auckland.concert.service.catalogue.Catalogue;
+import nz.ac.auckland.concert.service.domain.jpa.BookedSeat;
 import nz.ac.auckland.concert.service.domain.jpa.Booking;
 import nz.ac.auckland.concert.service.domain.jpa.Concert;
 import nz.ac.auckland.concert.service.domain.jpa.Reservation;
 import nz.ac.auckland.concert.service.domain.jpa.User;
+import nz.ac.auckland.concert.service.inventory.SeatInventory;
+import nz.ac.auckland.concert.service.util.ServiceConfig;
+import nz.ac.auckland.concert.service.waitingroom.WaitingRoom;
 
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
@@ -29,6 +36,7 @@ public class ConcertApplication extends Application {
             em.getTransaction().begin();
 
             // Delete all client resources
+            deleteAllBookedSeats(em);
             deleteAllBookings(em);
             deleteAllReservations(em);
             deleteAllUsers(em);
@@ -41,6 +49,26 @@ public class ConcertApplication extends Application {
 
             em.getTransaction().commit();
 
+            // Discard any in-memory seat state for the deleted reservations and bookings. Seat files shared with
+            // other processes are only reset when asked for.
+            SeatInventory.instance().clear();
+            if (ServiceConfig.SEAT_FILE_RESET) {
+                ServiceConfig.SEAT_ENGINE.reset();
+            }
+
+            // Discard any cached copies of the deleted users, and their authentication tokens
+            UserDirectory.instance().clear();
+            TokenIndex.instance().clear();
+
+            // Empty the waiting room queues, whose users have been deleted
+            WaitingRoom.instance().clear();
+
+            // Take a new catalogue snapshot when it's next requested
+            Catalogue.instance().invalidate();
+
+            // Delete expired reservations in the background from now on
+            ReservationReaper.instance().start();
+
         }finally {
             if (em != null && em.isOpen()) {
                 em.close();
@@ -48,6 +76,8 @@ public class ConcertApplication extends Application {
         }
 
         _classes.add(ConcertResource.class);
+        _classes.add(EntityManagerFilter.class);
+        _classes.add(UnhandledExceptionMapper.class);
         _classes.add(LocalDateAdapter.class);
         _classes.add(LocalDateTimeAdapter.class);
         _singletons.add(PersistenceManager.instance());
@@ -65,6 +95,15 @@ public class ConcertApplication extends Application {
         return _classes;
     }
 
+    private void deleteAllBookedSeats(EntityManager em) {
+        TypedQuery<BookedSeat> query = em.createQuery("SELECT s FROM BookedSeat s", BookedSeat.class);
+        List<BookedSeat> bookedSeats = query.getResultList();
+
+        for (BookedSeat bookedSeat: bookedSeats) {
+            em.remove(bookedSeat);
+        }
+    }
+
     private void deleteAllBookings(EntityManager em) {
         TypedQuery<Booking> query = em.createQuery("SELECT b FROM Booking b", Booking.class);
         List<Booking> bookings = query.getResultList();
@@ -2,26 +2,48 @@ package nz.ac.auckland.concert.service.services;
 
 import nz.ac.auckland.concert.common.dto.*;
 import nz.ac.auckland.concert.common.message.Messages;
+import nz.ac.auckland.concert.common.types.PriceBand;
+import nz.ac.auckland.concert.common.types.SeatNumber;
+import nz.ac.auckland.concert.service.auth.UserDirectory;
+import nz.ac.auckland.concert.service.catalogue.Catalogue;
+import nz.ac.auckland.concert.service.catalogue.CatalogueQueries;
+import nz.ac.auckland.concert.service.catalogue.CatalogueSnapshot;
 import nz.ac.auckland.concert.service.domain.jpa.*;
+import nz.ac.auckland.concert.service.inventory.SeatHold;
+import nz.ac.auckland.concert.service.inventory.SeatInventory;
+import nz.ac.auckland.concert.service.inventory.ShowKey;
+import nz.ac.auckland.concert.service.inventory.ShowSeats;
 import nz.ac.auckland.concert.service.mapper.*;
-import nz.ac.auckland.concert.service.util.TheatreUtility;
-import nz.ac.auckland.concert.utility.Config;
+import nz.ac.auckland.concert.service.util.ServiceConfig;
+import nz.ac.auckland.concert.service.waitingroom.WaitingRoom;
 import nz.ac.auckland.concert.utility.ServiceURI;
+import org.hibernate.exception.ConstraintViolationException;
 import org.hibernate.service.spi.ServiceException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.persistence.EntityManager;
-import javax.persistence.LockModeType;
+import javax.persistence.NoResultException;
+import javax.persistence.PersistenceException;
 import javax.persistence.TypedQuery;
 import javax.ws.rs.*;
 import javax.ws.rs.core.*;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Providers;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.annotation.Annotation;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.UUID;
 
+import static nz.ac.auckland.concert.utility.Config.ADMISSION_COOKIE;
 import static nz.ac.auckland.concert.utility.Config.CLIENT_COOKIE;
 
 /**
@@ -36,81 +58,107 @@ public class ConcertResource {
     private Logger _logger = LoggerFactory
             .getLogger(ConcertResource.class);
 
-    // JPQL queries
-    private static final String GET_ALL_CONCERTS = "SELECT a FROM CONCERTS a";
-    private static final String GET_ALL_PERFORMERS = "SELECT a FROM PERFORMERS a";
-    private static final String GET_USER_BY_USERNAME = "SELECT a FROM User a WHERE a._username = ";
-    private static final String GET_PERFORMER_IMAGE_NAME_BY_ID = "SELECT a._imageName FROM PERFORMERS a WHERE a._id = ";
-    private static final String GET_CONCERT_BY_ID = "SELECT a FROM CONCERTS a WHERE a._id = ";
-    private static final String GET_BOOKINGS_BY_CONCERT_ID =
-            "SELECT b FROM Booking b WHERE b._concert._id = ";
-    private static final String GET_EXPIRY_BY_RESERVATION_ID =
-            "SELECT a._expiryDate FROM Reservation a WHERE a._id = ";
-    private static final String GET_RESERVATIONS_BY_CONCERT_ID = "SELECT r FROM Reservation r WHERE r._request._concert._id = ";
-    private static final String AUTHENTICATION_TOKEN_EXISTS = "SELECT COUNT(u) from User u WHERE u._authenticationToken = ";
-
     public ConcertResource() {
-        _em = PersistenceManager.instance().createEntityManager();
+        _em = EntityManagerFilter.currentEntityManager();
     }
 
     /**
      * Retrieves all the concerts in the database. Concerts are represented as ConcertDTO objects.
      *
-     * @return OK Response containing a Set of ConcertDTOs
+     * @return OK Response containing a Set of ConcertDTOs, or Not Modified if the client's copy is current
      */
     @GET
     @Consumes(MediaType.APPLICATION_XML)
     @Produces(MediaType.APPLICATION_XML)
     @Path(ServiceURI.CONCERTS)
-    public Response getConcerts() throws WebApplicationException {
-
-        // Start the transaction
-        _em.getTransaction().begin();
-
-        // Retrieve Concert objects from the database
-        TypedQuery<Concert> query = _em.createQuery(GET_ALL_CONCERTS, Concert.class);
-        List<Concert> concerts = query.getResultList();
-
-        // Convert to data transfer objects
-        Set<ConcertDTO> concertDTOs = ConcertMapper.toDTO(concerts);
+    public Response getConcerts(@Context Request request, @Context Providers providers)
+            throws WebApplicationException {
 
-        // Package up the response
-        GenericEntity<Set<ConcertDTO>> ge = new GenericEntity<Set<ConcertDTO>>(concertDTOs){};
+        CatalogueSnapshot snapshot = Catalogue.instance().getSnapshot(
+                version -> takeCatalogueSnapshot(version, providers));
 
-        // Commit the transaction
-        _em.getTransaction().commit();
-
-        return Response.ok().entity(ge).build();
+        return catalogueResponse(request, snapshot, snapshot.getConcertsRepresentation());
     }
 
     /**
      * Retrieves all the performers in the database. Performers are represented as PerformerDTO objects.
      *
-     * @return OK Response containing a Set of PerformerDTOs
+     * @return OK Response containing a Set of PerformerDTOs, or Not Modified if the client's copy is current
      */
     @GET
     @Consumes(MediaType.APPLICATION_XML)
     @Produces(MediaType.APPLICATION_XML)
     @Path(ServiceURI.PERFORMERS)
-    public Response getPerformers() throws ServiceException {
+    public Response getPerformers(@Context Request request, @Context Providers providers)
+            throws ServiceException {
 
-        // Start the transaction
-        _em.getTransaction().begin();
+        CatalogueSnapshot snapshot = Catalogue.instance().getSnapshot(
+                version -> takeCatalogueSnapshot(version, providers));
 
-        // Retrieve Concert objects from the database
-        TypedQuery<Performer> query = _em.createQuery(GET_ALL_PERFORMERS, Performer.class);
-        List<Performer> performers = query.getResultList();
+        return catalogueResponse(request, snapshot, snapshot.getPerformersRepresentation());
+    }
 
-        // Convert to data transfer objects
-        Set<PerformerDTO> performerDTOs = PerformerMapper.toDTO(performers);
+    /**
+     * Serves part of the catalogue, answering conditional requests (If-None-Match, If-Modified-Since) with Not
+     * Modified when the client already has the current representation
+     * @param request the request being served
+     * @param snapshot the current catalogue snapshot
+     * @param representation the part of the snapshot requested
+     * @return the response
+     */
+    private Response catalogueResponse(Request request, CatalogueSnapshot snapshot,
+                                       CatalogueSnapshot.Representation representation) {
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(
+                snapshot.getLastModified(), representation.getEntityTag());
+        if (notModified != null) {
+            return notModified.build();
+        }
 
-        // Package up the response
-        GenericEntity<Set<PerformerDTO>> ge = new GenericEntity<Set<PerformerDTO>>(performerDTOs){};
+        return Response.ok(representation.getBody(), MediaType.APPLICATION_XML_TYPE)
+                .tag(representation.getEntityTag())
+                .lastModified(snapshot.getLastModified())
+                .build();
+    }
 
-        // Commit the transaction
-        _em.getTransaction().commit();
+    /**
+     * Reads the catalogue from the database and marshals it with the same providers used for ordinary responses
+     * @param version the version number to give the snapshot
+     * @param providers the application's providers
+     * @return the snapshot
+     */
+    private CatalogueSnapshot takeCatalogueSnapshot(long version, Providers providers) {
 
-        return Response.ok().entity(ge).build();
+        // Retrieve the concerts and performers from the database as data transfer objects
+        Set<ConcertDTO> concertDTOs = CatalogueQueries.loadConcerts(_em);
+        Set<PerformerDTO> performerDTOs = CatalogueQueries.loadPerformers(_em);
+
+        // Marshal the response bodies
+        byte[] concertsBody = marshal(new GenericEntity<Set<ConcertDTO>>(concertDTOs){}, providers);
+        byte[] performersBody = marshal(new GenericEntity<Set<PerformerDTO>>(performerDTOs){}, providers);
+
+        // HTTP dates only have a precision of one second
+        Date lastModified = new Date(System.currentTimeMillis() / 1000 * 1000);
+
+        _logger.info("Took catalogue snapshot " + version + " of " + concertDTOs.size() + " concerts and " +
+                performerDTOs.size() + " performers");
+
+        return new CatalogueSnapshot(version, lastModified, concertDTOs, concertsBody, performerDTOs,
+                performersBody);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> byte[] marshal(GenericEntity<T> entity, Providers providers) {
+        MessageBodyWriter<T> writer = (MessageBodyWriter<T>) providers.getMessageBodyWriter(
+                entity.getRawType(), entity.getType(), new Annotation[0], MediaType.APPLICATION_XML_TYPE);
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try {
+            writer.writeTo(entity.getEntity(), entity.getRawType(), entity.getType(), new Annotation[0],
+                    MediaType.APPLICATION_XML_TYPE, new MultivaluedHashMap<>(), body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return body.toByteArray();
     }
 
     /**
@@ -150,7 +198,7 @@ public class ConcertResource {
         _em.getTransaction().begin();
 
         // Check for users with the same username
-        if (isUserWithUsername(_em, newUser.getUsername())) {
+        if (UserDirectory.instance().get(_em, newUser.getUsername()) != null) {
             throw new BadRequestException(Response
                     .status(Response.Status.BAD_REQUEST)
                     .entity(Messages.CREATE_USER_WITH_NON_UNIQUE_NAME)
@@ -158,7 +206,7 @@ public class ConcertResource {
         }
 
         // Create an authentication token for the user
-        NewCookie authenticationToken = makeCookie();
+        NewCookie authenticationToken = makeCookie(newUser.getUsername());
 
         // Convert to domain model
         User domainUser = UserMapper.toDomain(newUser, authenticationToken);
@@ -176,6 +224,10 @@ public class ConcertResource {
         // Commit the transaction
         _em.getTransaction().commit();
 
+        // The user is now in the database, so cache them and start accepting their token
+        UserDirectory.instance().put(domainUser);
+        ServiceConfig.AUTHENTICATION_MODE.tokenIssued(authenticationToken, domainUser.getUsername());
+
         return response;
     }
 
@@ -215,11 +267,9 @@ public class ConcertResource {
                     .build());
         }
 
-        // Start the transaction
-        _em.getTransaction().begin();
-
-        // Check the user exists
-        if (!isUserWithUsername(_em, user.getUsername())) {
+        // Check the user exists. Most logins are answered from the user directory without a query.
+        User domainUser = UserDirectory.instance().get(_em, user.getUsername());
+        if (domainUser == null) {
             throw new NotFoundException(Response
                     .status(Response.Status.NOT_FOUND)
                     .entity(Messages.AUTHENTICATE_NON_EXISTENT_USER)
@@ -227,8 +277,6 @@ public class ConcertResource {
         }
 
         // Check that the user's password matches the one stored in the database
-        User domainUser = retrieveUserByUsername(_em, user.getUsername());
-
         if (!domainUser.getPassword().equals(user.getPassword())) {
             throw new BadRequestException(Response
                     .status(Response.Status.BAD_REQUEST)
@@ -240,45 +288,29 @@ public class ConcertResource {
         // Convert to a data transfer object
         UserDTO userDTO = UserMapper.toDTO(domainUser);
 
-        // Commit the transaction
-        _em.getTransaction().commit();
+        // Give the user a token that is accepted for another time to live
+        NewCookie authenticationToken = ServiceConfig.AUTHENTICATION_MODE.reissueToken(domainUser);
+        ServiceConfig.AUTHENTICATION_MODE.tokenIssued(authenticationToken, domainUser.getUsername());
 
         // Add the authentication token to the response
         return Response.ok(userDTO)
-                .cookie(domainUser.getAuthenticationToken())
+                .cookie(authenticationToken)
                 .build();
     }
 
     /**
-     * Retrieves a user from the database
+     * Retrieves a managed user from the database, for requests that change the user or need their bookings. Other
+     * requests should use the UserDirectory.
      * @param em
      * @param username for the user
      * @return the user
      */
     private User retrieveUserByUsername(EntityManager em, String username) {
-        TypedQuery<User> query = em.createQuery(getUserQuery(username), User.class);
-        return query.getSingleResult();
-    }
-
-    /**
-     * Checks if a user with a specified username exists in the database
-     * @param em
-     * @param username of the user
-     * @return true if a user does exist, false otherwise
-     */
-    private boolean isUserWithUsername(EntityManager em, String username) {
-        TypedQuery<User> query = em.createQuery(getUserQuery(username), User.class);
-        List<User> usernames = query.getResultList();
-        return !usernames.isEmpty();
-    }
-
-    /**
-     * Creates a query to select a user from the database given the username
-     * @param username
-     * @return query to select the user
-     */
-    private String getUserQuery(String username) {
-        return GET_USER_BY_USERNAME + "'" + username + "'";
+        User user = em.find(User.class, username);
+        if (user == null) {
+            throw new NoResultException("No user with username " + username);
+        }
+        return user;
     }
 
     /**
@@ -292,36 +324,24 @@ public class ConcertResource {
     @Path(ServiceURI.PERFORMER_IMAGE)
     public Response getImageForPerformer(@PathParam("id")Long performerId) throws ServiceException {
 
-        // Start the transaction
-        _em.getTransaction().begin();
-
         // Retrieve name of image for performer from the database
-        TypedQuery<String> query = _em.createQuery(getPerformerImageNameQuery(performerId), String.class);
+        TypedQuery<String> query = _em.createNamedQuery(Performer.FIND_IMAGE_NAME_BY_ID, String.class)
+                .setParameter("id", performerId);
         String imageName = query.getSingleResult();
 
-        // Commit the transaction
-        _em.getTransaction().commit();
-
         return Response.ok(imageName)
                 .build();
     }
 
-    /**
-     * Creates a query to select the name of a performer's image the database given the performer ID
-     * @param performerId
-     * @return query to select the image name
-     */
-    private String getPerformerImageNameQuery(Long performerId) {
-        return GET_PERFORMER_IMAGE_NAME_BY_ID + "'" + performerId + "'";
-    }
-
     /**
      * Attempts to reserve seats for a concert. The reservation is valid for a
-     * short period (5 seconds).
+     * short period (at most 5 seconds by default, less when the concert is
+     * busy; see HoldDurationPolicy), given in the reservation's
+     * expiryTimeInSeconds.
      *
      * @param reservationRequest a description of the reservation, including
      * number of seats, price band, concert identifier, and concert date. All
-     * fields are expected to be filled.
+     * fields are expected to be filled, apart from the optional seat allocation.
      *
      * @return an OK Response containing a ReservationDTO object that describes the reservation. This
      * includes the original ReservationDTO parameter plus the seats (a Set of
@@ -337,6 +357,13 @@ public class ConcertResource {
      * @throws BadRequestException if the ReservationRequestDTO parameter is incomplete.
      * Messages.RESERVATION_REQUEST_WITH_MISSING_FIELDS
      *
+     * @throws ForbiddenException if the authentication token is for a different user.
+     * Messages.AUTHENTICATED_USER_MISMATCH
+     *
+     * @throws ForbiddenException if the waiting room is enabled and the user hasn't been admitted
+     * from it for the concert date.
+     * Messages.NOT_ADMITTED_FROM_WAITING_ROOM
+     *
      * @throws BadRequestException if the ReservationRequestDTO parameter specifies a reservation
      * date/time for when the concert is not scheduled.
      * Messages.CONCERT_NOT_SCHEDULED_ON_RESERVATION_DATE
@@ -352,7 +379,8 @@ public class ConcertResource {
     @Path(ServiceURI.RESERVATIONS)
     public Response reserveSeats(ReservationRequestDTO reservationRequest,
                                  @PathParam("username") String username,
-                                 @CookieParam(CLIENT_COOKIE) Cookie authenticationToken) throws ServiceException {
+                                 @CookieParam(CLIENT_COOKIE) Cookie authenticationToken,
+                                 @CookieParam(ADMISSION_COOKIE) Cookie admissionToken) throws ServiceException {
 
         // Check the client has an authentication token
         checkUnauthenticatedRequest(authenticationToken);
@@ -366,13 +394,21 @@ public class ConcertResource {
                     .build());
         }
 
-        // Start the transaction
-        _em.getTransaction().begin();
+        // Check the client's authentication token is valid and is for the user making the reservation
+        checkAuthenticatedUser(authenticationToken, username);
 
-        // Check the client's authentication token is valid
-        checkBadAuthenticatedToken(_em, authenticationToken);
+        // Turn away users who haven't been admitted from the waiting room before doing any database work
+        if (WaitingRoom.instance().isEnabled() && (admissionToken == null ||
+                !WaitingRoom.instance().isAdmitted(admissionToken.getValue(),
+                        new ShowKey(reservationRequest.getConcertId(), reservationRequest.getDate()), username))) {
+            throw new ForbiddenException(Response
+                    .status(Response.Status.FORBIDDEN)
+                    .entity(Messages.NOT_ADMITTED_FROM_WAITING_ROOM)
+                    .build());
+        }
 
-        _em.flush();
+        // Start the transaction
+        _em.getTransaction().begin();
 
         // Retrieve the concert from the database
         Concert concert = retrieveConcertById(_em, reservationRequest.getConcertId());
@@ -387,78 +423,152 @@ public class ConcertResource {
                     .build());
         }
 
-        // Retrieve bookings
-        TypedQuery<Booking> query = _em.createQuery(getBookingsByConcertIdQuery(reservationRequest.getConcertId()),
-                Booking.class);
-        List<Booking> bookings = query.getResultList();
-
-        _em.flush();
-
-        // Retrieve reservations
-        TypedQuery<Reservation> query2 = _em.createQuery
-                (getReservationsByConcertIdQuery(reservationRequest.getConcertId()), Reservation.class);
-        query2.setLockMode(LockModeType.OPTIMISTIC); // do not want other clients editing these reservations
-        List<Reservation> reservations = query2.getResultList();
-
-        _em.flush();
-
-        // Free up seats from expired reservations
-        for (Reservation reservation: reservations) {
-            if (reservation.getExpiryDate().isBefore(LocalDateTime.now())) {
-                reservations.remove(reservation);
-                _em.remove(reservation);
-                _em.flush();
-            }
-        }
+        // Retrieve the seat state for the concert date, loading it from the database on first use
+        Long concertId = reservationRequest.getConcertId();
+        LocalDateTime date = reservationRequest.getDate();
+        ShowSeats show = SeatInventory.instance().getShow(concertId, date,
+                s -> loadShowSeats(_em, concertId, date, s));
 
-        // Booked or reserved seats are not available
-        Set<Seat> takenSeats = new HashSet<>();
-        for (Booking booking: bookings) {
-            takenSeats.addAll(booking.getSeats());
-        }
-        for (Reservation reservation: reservations) {
-            takenSeats.addAll(reservation.getSeats());
-        }
+        // The request is valid, so commit the transaction before waiting on the batch
+        _em.getTransaction().commit();
 
-        // Find available seats for the client
-        Set<SeatDTO> availableSeats = TheatreUtility.findAvailableSeats(reservationRequest.getNumberOfSeats(),
-                reservationRequest.getSeatType(), SeatMapper.toDTO(takenSeats));
-        for (Seat seat: SeatMapper.toDomain(availableSeats)) {
-            _em.lock(seat, LockModeType.OPTIMISTIC_FORCE_INCREMENT);
+        // Reserve seats for the client. How long the seats are held for depends on how busy the show is.
+        ShowKey key = new ShowKey(concertId, date);
+        HoldDurationPolicy.instance().requested(key);
+        ReservationDTO reservationDTO;
+        if (ServiceConfig.RESERVATION_MODE == ReservationMode.Signed) {
+
+            // Hold the seats in memory only, and give the client a signed token describing the hold
+            // Expiry dates are kept to the millisecond, as in the hold token
+            int holdSeconds = HoldDurationPolicy.instance().getHoldSeconds(key);
+            LocalDateTime expiryDate = LocalDateTime.now().plusSeconds(holdSeconds).truncatedTo(ChronoUnit.MILLIS);
+            long holdId = ShowSeats.newHoldId();
+            Set<SeatDTO> seats = SeatInventory.instance().execute(key,
+                    () -> show.reserve(reservationRequest.getNumberOfSeats(), reservationRequest.getSeatType(),
+                            reservationRequest.getAllocation(), holdId, expiryDate));
+            reservationDTO = seats.isEmpty() ? null :
+                    SeatHold.issue(holdId, reservationRequest, username, seats, expiryDate, holdSeconds);
+        } else {
+
+            // Requests for the same concert date are batched, so their seats are allocated in one pass and their
+            // reservations persisted in one transaction.
+            reservationDTO = ReservationBatcher.instance().reserve(key, show, reservationRequest, username);
         }
 
         // Check there are enough seats for the client
-        if (availableSeats.isEmpty()) {
+        if (reservationDTO == null) {
             throw new NotFoundException(Response
                     .status(Response.Status.NOT_FOUND)
                     .entity(Messages.INSUFFICIENT_SEATS_AVAILABLE_FOR_RESERVATION)
                     .build());
         }
+        HoldDurationPolicy.instance().held(key);
 
-        // Create a reservation to add to the database
-        // Reservations last 5 seconds
-        Reservation domainReservation = new Reservation(ReservationRequestMapper.toDomain(reservationRequest,
-                concert), SeatMapper.toDomain(availableSeats),
-                LocalDateTime.now().plusSeconds(Config.RESERVATION_EXPIRY_TIME_IN_SECONDS));
+        // Package up and send the response
+        return Response
+                .ok(reservationDTO)
+                .build();
 
-        // Persist the client's reservation to the database
-        _em.persist(domainReservation);
-        _em.flush();
-        _em.clear();
+    }
+
+    /**
+     * Adds a user to the back of the waiting room for a concert date. Once the user has been
+     * admitted, they can reserve seats for the concert date.
+     *
+     * @param position the concert identifier and date to queue for.
+     *
+     * @return an OK Response containing a QueuePositionDTO that describes the user's place in the
+     * queue, and a cookie holding the place's token, which must be sent when reserving seats.
+     *
+     * @throws NotAuthorizedException if the request is made by an unauthenticated user.
+     * Messages.UNAUTHENTICATED_REQUEST
+     *
+     * @throws NotAuthorizedException if the request includes an authentication token but it's not
+     * recognised by the remote service.
+     * Messages.BAD_AUTHENTICATON_TOKEN
+     *
+     * @throws ForbiddenException if the authentication token is for a different user.
+     * Messages.AUTHENTICATED_USER_MISMATCH
+     *
+     * @throws BadRequestException if the concert identifier or date is missing.
+     * Messages.RESERVATION_REQUEST_WITH_MISSING_FIELDS
+     *
+     * @throws BadRequestException if the concert is not scheduled on the date.
+     * Messages.CONCERT_NOT_SCHEDULED_ON_RESERVATION_DATE
+     *
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_XML)
+    @Produces(MediaType.APPLICATION_XML)
+    @Path(ServiceURI.WAITING_ROOM)
+    public Response joinWaitingRoom(QueuePositionDTO position, @PathParam("username") String username,
+                                    @CookieParam(CLIENT_COOKIE) Cookie authenticationToken) throws ServiceException {
+
+        checkUnauthenticatedRequest(authenticationToken);
+
+        if (position.getConcertId() == null || position.getDate() == null) {
+            throw new BadRequestException(Response
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity(Messages.RESERVATION_REQUEST_WITH_MISSING_FIELDS)
+                    .build());
+        }
 
-        // Retrieve the reservation ID
-        Long id = domainReservation.getId();
+        checkAuthenticatedUser(authenticationToken, username);
 
-        // Create a reservation to send back to the client
-        ReservationDTO reservationDTO = new ReservationDTO(id, reservationRequest, availableSeats);
+        // Check concert is scheduled on the date. The concert normally comes from the second-level cache, so
+        // joining needs no transaction.
+        Concert concert = retrieveConcertById(_em, position.getConcertId());
+        if (!concert.getDates().contains(position.getDate())) {
+            throw new BadRequestException(Response
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity(Messages.CONCERT_NOT_SCHEDULED_ON_RESERVATION_DATE)
+                    .build());
+        }
 
-        _em.getTransaction().commit();
+        QueuePositionDTO joined = WaitingRoom.instance().join(new ShowKey(position.getConcertId(),
+                position.getDate()), username);
 
-        // Package up and send the response
         return Response
-                .ok(reservationDTO)
+                .ok(joined)
+                .cookie(new NewCookie(ADMISSION_COOKIE, joined.getToken()))
                 .build();
+    }
 
+    /**
+     * Returns the current status of a place in the waiting room. This doesn't use the database, so
+     * clients can poll it cheaply; while the place hasn't been admitted, the Retry-After header
+     * suggests when to poll next.
+     *
+     * @param token the place's token.
+     *
+     * @return an OK Response containing a QueuePositionDTO that describes the place.
+     *
+     * @throws NotFoundException if the token isn't recognised, e.g. because it has expired.
+     * Messages.BAD_WAITING_ROOM_TOKEN
+     *
+     */
+    @GET
+    @Consumes(MediaType.APPLICATION_XML)
+    @Produces(MediaType.APPLICATION_XML)
+    @Path(ServiceURI.WAITING_ROOM_POSITION)
+    public Response getWaitingRoomPosition(@PathParam("token") String token) throws ServiceException {
+        QueuePositionDTO position = WaitingRoom.instance().getPosition(token);
+        if (position == null) {
+            throw new NotFoundException(Response
+                    .status(Response.Status.NOT_FOUND)
+                    .entity(Messages.BAD_WAITING_ROOM_TOKEN)
+                    .build());
+        }
+
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoStore(true);
+        Response.ResponseBuilder response = Response
+                .ok(position)
+                .cacheControl(cacheControl);
+        if (!position.isAdmitted()) {
+            response.header(HttpHeaders.RETRY_AFTER, Math.max(1, Math.min(10, position.getEstimatedWaitSeconds())));
+        }
+        return response.build();
     }
 
     private void checkUnauthenticatedRequest(Cookie authenticationToken) {
@@ -470,55 +580,91 @@ public class ConcertResource {
         }
     }
 
-    private void checkBadAuthenticatedToken(EntityManager em, Cookie authenticationToken) {
+    private void checkBadAuthenticatedToken(Cookie authenticationToken) {
+        authenticatedUsername(authenticationToken);
+    }
+
+    /**
+     * Checks that an authentication token is valid and was issued to the user named in the request's URI
+     * @param authenticationToken the client's authentication token
+     * @param username the username in the request's URI
+     */
+    private void checkAuthenticatedUser(Cookie authenticationToken, String username) {
+        if (!authenticatedUsername(authenticationToken).equals(username)) {
+            throw new ForbiddenException(Response
+                    .status(Response.Status.FORBIDDEN)
+                    .entity(Messages.AUTHENTICATED_USER_MISMATCH)
+                    .build());
+        }
+    }
 
-        TypedQuery<Long> query = em.createQuery(getAuthenticationTokenExistsQuery(authenticationToken.getValue()),
-                Long.class);
+    private String authenticatedUsername(Cookie authenticationToken) {
 
-        if (query.getResultList().size() == 0) {
+        // Tokens are checked without going to the database (see AuthenticationMode)
+        String username = ServiceConfig.AUTHENTICATION_MODE.getUsername(authenticationToken.getValue());
+        if (username == null) {
             throw new NotAuthorizedException(Response
                     .status(Response.Status.UNAUTHORIZED)
                     .entity(Messages.BAD_AUTHENTICATON_TOKEN)
                     .build());
         }
-    }
-
-    private String getAuthenticationTokenExistsQuery(String tokenValue) {
-        return AUTHENTICATION_TOKEN_EXISTS + "'" + tokenValue + "'";
+        return username;
     }
 
     /**
-     * Retrieves a concert from the database
+     * Retrieves a concert by primary key, which is normally answered from the second-level cache
      * @param em
      * @param concertId ID of the concert
      * @return the concert
      */
     private Concert retrieveConcertById(EntityManager em, Long concertId) {
-        TypedQuery<Concert> query = em.createQuery(getConcertByIdQuery(concertId),
-                Concert.class);
-        return query.getSingleResult();
-    }
-
-    /**
-     * Produces a query to retrieve a concert in the database
-     * @param id of the concert
-     * @return query string
-     */
-    private String getConcertByIdQuery(Long id) {
-        return GET_CONCERT_BY_ID + "'" + id + "'";
+        Concert concert = em.find(Concert.class, concertId);
+        if (concert == null) {
+            throw new NoResultException("No concert with ID " + concertId);
+        }
+        return concert;
     }
 
     /**
-     * Produces a query to retrieve the booked seats of a specified concert
-     * @param id of the concert
-     * @return query string
+     * Populates the seat state of a concert date from the bookings and unexpired reservations in the database
+     * @param em
+     * @param concertId ID of the concert
+     * @param date date of the performance
+     * @param show seat state to populate
      */
-    private String getBookingsByConcertIdQuery(Long id) {
-        return GET_BOOKINGS_BY_CONCERT_ID + "'" + id + "'";
-    }
-
-    private String getReservationsByConcertIdQuery(Long id) {
-        return GET_RESERVATIONS_BY_CONCERT_ID + "'" + id + "'";
+    private void loadShowSeats(EntityManager em, Long concertId, LocalDateTime date, ShowSeats show) {
+
+        // Booked seats, as seat codes
+        List<Integer> bookedSeats = em.createNamedQuery(BookedSeat.FIND_SEAT_CODES_BY_CONCERT_DATE, Integer.class)
+                .setParameter("concertId", concertId)
+                .setParameter("date", date)
+                .getResultList();
+        int[] seatCodes = new int[bookedSeats.size()];
+        for (int i = 0; i < seatCodes.length; i++) {
+            seatCodes[i] = bookedSeats.get(i);
+        }
+        show.markBooked(seatCodes);
+
+        // Reserved seats, as rows of seat code, reservation id and expiry date ordered by reservation id. Each
+        // reservation's seats are marked together, under its id.
+        List<?> reservedSeats = em.createNamedQuery(Reservation.FIND_UNEXPIRED_SEAT_CODES_BY_CONCERT_DATE)
+                .setParameter("concertId", concertId)
+                .setParameter("date", date)
+                .setParameter("now", LocalDateTime.now())
+                .getResultList();
+        seatCodes = new int[reservedSeats.size()];
+        int start = 0;
+        for (int i = 0; i < seatCodes.length; i++) {
+            Object[] row = (Object[]) reservedSeats.get(i);
+            seatCodes[i] = ((Number) row[0]).intValue();
+
+            Object id = row[1];
+            if (i + 1 == seatCodes.length || !id.equals(((Object[]) reservedSeats.get(i + 1))[1])) {
+                show.markReserved(Arrays.copyOfRange(seatCodes, start, i + 1), ((Number) id).longValue(),
+                        ((Timestamp) row[2]).toLocalDateTime());
+                start = i + 1;
+            }
+        }
     }
 
     /**
@@ -537,6 +683,9 @@ public class ConcertResource {
      * recognised by the remote service.
      * Messages.BAD_AUTHENTICATON_TOKEN
      *
+     * @throws ForbiddenException if the authentication token is for a different user.
+     * Messages.AUTHENTICATED_USER_MISMATCH
+     *
      * @throws BadRequestException if the reservation has expired.
      * Messages.EXPIRED_RESERVATION
      *
@@ -558,12 +707,15 @@ public class ConcertResource {
         // Start the transaction
         _em.getTransaction().begin();
 
-        checkBadAuthenticatedToken(_em, authenticationToken);
+        checkAuthenticatedUser(authenticationToken, username);
 
         _em.flush();
 
         // Check the user has a credit card registered
-        User user = retrieveUserByUsername(_em, username);
+        User user = UserDirectory.instance().get(_em, username);
+        if (user == null) {
+            throw new NoResultException("No user with username " + username);
+        }
         if (user.getCreditCard() == null) {
             throw new BadRequestException(Response
                     .status(Response.Status.BAD_REQUEST)
@@ -573,22 +725,67 @@ public class ConcertResource {
 
         _em.flush();
 
-        // Get the expiry date
-        TypedQuery<LocalDateTime> query = _em.createQuery(getExpiryByReservationIdQuery(reservationDTO.getId()),
-                LocalDateTime.class);
-        LocalDateTime expiryDate = query.getSingleResult();
+        // Get what was reserved and when the reservation expires. A signed hold is described by its token, which
+        // the client can't alter, and a persisted reservation by its row, so nothing the client sends but the
+        // reservation's id is used. Only the user a reservation was made for can confirm it; a reservation that has
+        // been reaped has expired.
+        Long concertId;
+        LocalDateTime date;
+        PriceBand seatType;
+        Set<SeatDTO> reservedSeats;
+        long holdId;
+        LocalDateTime expiryDate;
+        if (ServiceConfig.RESERVATION_MODE == ReservationMode.Signed) {
+            SeatHold hold = reservationDTO.getHoldToken() == null ? null :
+                    SeatHold.verify(reservationDTO.getHoldToken());
+            if (hold == null || !hold.getUsername().equals(username)) {
+                throw new BadRequestException(Response
+                        .status(Response.Status.BAD_REQUEST)
+                        .entity(Messages.EXPIRED_RESERVATION)
+                        .build());
+            }
+            concertId = hold.getConcertId();
+            date = hold.getDate();
+            seatType = hold.getSeatType();
+            reservedSeats = hold.getSeats();
+            holdId = hold.getId();
+            expiryDate = hold.getExpiryDate();
+        } else {
+            TypedQuery<Object[]> query = _em.createNamedQuery(Reservation.FIND_HOLD_BY_ID, Object[].class)
+                    .setParameter("id", reservationDTO.getId());
+            List<Object[]> holds = query.getResultList();
+            if (holds.isEmpty() || !holds.get(0)[4].equals(username)) {
+                throw new BadRequestException(Response
+                        .status(Response.Status.BAD_REQUEST)
+                        .entity(Messages.EXPIRED_RESERVATION)
+                        .build());
+            }
+            Object[] hold = holds.get(0);
+            concertId = (Long) hold[0];
+            date = (LocalDateTime) hold[1];
+            seatType = (PriceBand) hold[2];
+            expiryDate = (LocalDateTime) hold[3];
+            holdId = reservationDTO.getId();
+
+            // The reservation's seats, as seat codes
+            List<?> seatCodes = _em.createNamedQuery(Reservation.FIND_SEAT_CODES_BY_ID)
+                    .setParameter("id", holdId)
+                    .getResultList();
+            reservedSeats = new HashSet<>();
+            for (Object seatCode : seatCodes) {
+                int code = ((Number) seatCode).intValue();
+                reservedSeats.add(new SeatDTO(SeatConverter.rowOf(code),
+                        new SeatNumber(SeatConverter.numberOf(code))));
+            }
+        }
 
         _em.flush();
 
         // Retrieve the concert
-        Concert concert = retrieveConcertById(_em, reservationDTO.getReservationRequest().getConcertId());
+        Concert concert = retrieveConcertById(_em, concertId);
 
         _em.flush();
 
-        // Convert SeatDTOs representing reserved seats into domain model objects
-        Set<Seat> seats = SeatMapper.toDomain(reservationDTO.getSeats());
-        _em.lock(seats, LockModeType.OPTIMISTIC_FORCE_INCREMENT);
-
         // Check the reservation has not expired
         if (expiryDate.isBefore(LocalDateTime.now())) {
             throw new BadRequestException(Response
@@ -597,26 +794,69 @@ public class ConcertResource {
                     .build());
         }
 
+        // Convert the reserved seats into booked seats. This fails if the seats are no longer held by the
+        // reservation, e.g. because it has already been confirmed or has expired and its seats reserved again.
+        ShowKey key = new ShowKey(concertId, date);
+        ShowSeats show = SeatInventory.instance().getShow(concertId, date,
+                s -> loadShowSeats(_em, concertId, date, s));
+        boolean booked = SeatInventory.instance().execute(key, () -> show.book(reservedSeats, holdId, expiryDate));
+        if (!booked) {
+            throw new BadRequestException(Response
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity(Messages.EXPIRED_RESERVATION)
+                    .build());
+        }
+
+        // Convert SeatDTOs representing reserved seats into domain model objects
+        Set<Seat> seats = SeatMapper.toDomain(reservedSeats);
+
         // Create a booking for the client
-        Booking booking = new Booking(concert,
-                reservationDTO.getReservationRequest().getDate(),
-                seats,
-                reservationDTO.getReservationRequest().getSeatType());
+        Booking booking = new Booking(concert, date, seats, seatType);
+
+        // Persist the booking with one BookedSeat per seat, and add it to the user. The inserts are sent as JDBC
+        // batches; if another booking already holds any of the seats, the database rejects the BookedSeat rows.
+        // If the booking isn't committed, the seats are put back under the reservation.
+        Long id;
+        boolean committed = false;
+        try {
+            _em.persist(booking);
+            for (Seat seat : seats) {
+                _em.persist(new BookedSeat(booking, seat));
+            }
+            retrieveUserByUsername(_em, username).getBookings().add(booking);
 
-        // Persist the booking to the database
-        _em.persist(booking);
-        _em.flush();
-        _em.clear();
+            try {
+                _em.flush();
+            } catch (PersistenceException e) {
+                if (!(e.getCause() instanceof ConstraintViolationException)) {
+                    throw e;
+                }
+                _logger.info("Seats for reservation " + reservationDTO.getId() + " have already been booked");
+                throw new BadRequestException(Response
+                        .status(Response.Status.BAD_REQUEST)
+                        .entity(Messages.EXPIRED_RESERVATION)
+                        .build());
+            }
 
-        // Add the booking to the user
-        User user2 = retrieveUserByUsername(_em, username);
-        user2.getBookings().add(booking);
+            // Retrieve the booking ID
+            id = booking.getId();
+
+            // Commit the transaction
+            _em.getTransaction().commit();
+            committed = true;
+        } finally {
+            if (!committed) {
+                SeatInventory.instance().execute(key, () -> {
+                    show.unbook(reservedSeats, holdId, expiryDate);
+                    return null;
+                });
+            }
+        }
 
-        // Retrieve the booking ID
-        Long id = booking.getId();
+        // The user has changed, so reload them on next use
+        UserDirectory.instance().invalidate(username);
 
-        // Commit the transaction
-        _em.getTransaction().commit();
+        HoldDurationPolicy.instance().booked(key);
 
         // Package up and send the response
         return Response
@@ -625,10 +865,6 @@ public class ConcertResource {
 
     }
 
-    private String getExpiryByReservationIdQuery(Long id) {
-        return GET_EXPIRY_BY_RESERVATION_ID + "'" + id + "'";
-    }
-
     /**
      * Registers a credit card for a given user.
      *
@@ -657,7 +893,7 @@ public class ConcertResource {
         // Start the transaction
         _em.getTransaction().begin();
 
-        checkBadAuthenticatedToken(_em, cookie);
+        checkBadAuthenticatedToken(cookie);
 
         // Retrieve the user from the database
         User user = retrieveUserByUsername(_em, username);
@@ -668,6 +904,9 @@ public class ConcertResource {
         // Commit the transaction
         _em.getTransaction().commit();
 
+        // The user has changed, so reload them on next use
+        UserDirectory.instance().invalidate(username);
+
         // Package up and send the response
         return Response.noContent().build();
     }
@@ -696,10 +935,7 @@ public class ConcertResource {
 
         checkUnauthenticatedRequest(cookie);
 
-        // Start the transaction
-        _em.getTransaction().begin();
-
-        checkBadAuthenticatedToken(_em, cookie);
+        checkBadAuthenticatedToken(cookie);
 
         // Retrieve user's bookings from database
         User user = retrieveUserByUsername(_em, username);
@@ -711,9 +947,6 @@ public class ConcertResource {
         // Package up and send the response
         GenericEntity<Set<BookingDTO>> ge = new GenericEntity<Set<BookingDTO>>(bookingDTOs){};
 
-        // Commit the transaction
-        _em.getTransaction().commit();
-
         return Response.ok().entity(ge).build();
 
     }
@@ -746,21 +979,14 @@ public class ConcertResource {
      * Helper method that can be called from every service method to generate a
      * NewCookie instance.
      *
-     * @return a NewCookie object, with a generated UUID value
+     * @param username the user the cookie is for
+     * @return a NewCookie object holding an authentication token for the configured AuthenticationMode
      */
-    private NewCookie makeCookie(){
-        NewCookie token = new NewCookie(CLIENT_COOKIE, UUID.randomUUID().toString());
+    private NewCookie makeCookie(String username){
+        NewCookie token = ServiceConfig.AUTHENTICATION_MODE.createToken(username);
 
         _logger.info("Generated cookie: " + token.getValue());
 
         return token;
     }
-
-    /**
-     * Closes the entity manager
-     */
-    @Override
-    public void finalize() {
-        _em.close();
-    }
 }
\ No newline at end of file
@@ -0,0 +1,158 @@
+package nz.ac.auckland.concert.service.services;
+
+import nz.ac.auckland.concert.service.util.ServiceConfig;
+import org.hibernate.StaleStateException;
+import org.hibernate.exception.LockAcquisitionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.LockTimeoutException;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.PessimisticLockException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Singleton class that counts, per concert, how often transactions that write reservations conflict with other
+ * transactions and are retried. A concert with a high conflict rate is a hot show.
+ *
+ * When ServiceConfig.CONTENTION_REPORT_INTERVAL_SECONDS is set, a report is logged at that interval.
+ */
+public class ContentionMetrics {
+
+    private static final ContentionMetrics _instance = new ContentionMetrics(
+            ServiceConfig.CONTENTION_REPORT_INTERVAL_SECONDS);
+
+    private Logger _logger = LoggerFactory
+            .getLogger(ContentionMetrics.class);
+
+    private final ConcurrentMap<Long, Counters> _counters = new ConcurrentHashMap<>();
+
+    protected ContentionMetrics(long reportIntervalSeconds) {
+        if (reportIntervalSeconds > 0) {
+            ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "contention-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(() -> _logger.info(getReport()), reportIntervalSeconds,
+                    reportIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Records a transaction attempt for a concert
+     */
+    public void attempted(Long concertId) {
+        countersFor(concertId)._attempts.increment();
+    }
+
+    /**
+     * Records that a transaction for a concert conflicted and will be retried
+     */
+    public void retried(Long concertId) {
+        countersFor(concertId)._retries.increment();
+    }
+
+    /**
+     * Records that a transaction for a concert conflicted on every attempt and was given up
+     */
+    public void exhausted(Long concertId) {
+        countersFor(concertId)._exhausted.increment();
+    }
+
+    public long getAttempts(Long concertId) {
+        Counters counters = _counters.get(concertId);
+        return counters == null ? 0 : counters._attempts.sum();
+    }
+
+    public long getRetries(Long concertId) {
+        Counters counters = _counters.get(concertId);
+        return counters == null ? 0 : counters._retries.sum();
+    }
+
+    /**
+     * @return how many of a concert's transaction attempts conflicted, whether or not they were retried
+     */
+    public long getConflicts(Long concertId) {
+        Counters counters = _counters.get(concertId);
+        return counters == null ? 0 : counters._retries.sum() + counters._exhausted.sum();
+    }
+
+    /**
+     * @return the fraction of a concert's transaction attempts that conflicted, from 0 to 1
+     */
+    public double getConflictRate(Long concertId) {
+        Counters counters = _counters.get(concertId);
+        return counters == null ? 0 : counters.getConflictRate();
+    }
+
+    /**
+     * Reports the attempts, retries and conflict rate of every concert that has had a conflict.
+     *
+     * @return a one-line summary
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder("Reservation contention:");
+        int hotShows = 0;
+        for (Map.Entry<Long, Counters> entry : new TreeMap<>(_counters).entrySet()) {
+            Counters counters = entry.getValue();
+            long retries = counters._retries.sum();
+            long exhausted = counters._exhausted.sum();
+            if (retries + exhausted == 0) {
+                continue;
+            }
+            hotShows++;
+            report.append(String.format(" concert %d: %d attempts, %d retries, %d given up (%.1f%% conflicts);",
+                    entry.getKey(), counters._attempts.sum(), retries, exhausted,
+                    100 * counters.getConflictRate()));
+        }
+        if (hotShows == 0) {
+            report.append(" no conflicts");
+        }
+        return report.toString();
+    }
+
+    /**
+     * Checks whether a transaction failed because it conflicted with another transaction, in which case it can be
+     * retried
+     * @param e the failure
+     * @return true if the failure, or any of its causes, is an optimistic or pessimistic locking failure
+     */
+    public static boolean isConflict(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OptimisticLockException || cause instanceof PessimisticLockException ||
+                    cause instanceof LockTimeoutException || cause instanceof StaleStateException ||
+                    cause instanceof LockAcquisitionException ||
+                    cause instanceof org.hibernate.PessimisticLockException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Counters countersFor(Long concertId) {
+        return _counters.computeIfAbsent(concertId, id -> new Counters());
+    }
+
+    public static ContentionMetrics instance() {
+        return _instance;
+    }
+
+    private static class Counters {
+        private final LongAdder _attempts = new LongAdder();
+        private final LongAdder _retries = new LongAdder();
+        private final LongAdder _exhausted = new LongAdder();
+
+        double getConflictRate() {
+            long attempts = _attempts.sum();
+            return attempts == 0 ? 0 : (double) (_retries.sum() + _exhausted.sum()) / attempts;
+        }
+    }
+}
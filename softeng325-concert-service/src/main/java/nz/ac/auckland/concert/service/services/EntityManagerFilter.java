@@ -0,0 +1,88 @@
+package nz.ac.auckland.concert.service.services;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+
+import javax.persistence.EntityManager;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Filter that gives each request its own EntityManager. The EntityManager is opened before the request is matched to
+ * a resource, so a resource object can pick it up with currentEntityManager() when it is constructed, and it is closed
+ * once the response is ready. Any transaction still active at that point, e.g. because the resource method threw an
+ * exception, is rolled back, so each request holds at most one JDBC connection and always gives it back.
+ *
+ * Response filters don't run when a resource method throws an exception that no ExceptionMapper handles, so
+ * UnhandledExceptionMapper handles every exception and releases the request's EntityManager itself. The EntityManager
+ * is therefore never left open, holding its connection and table locks, after a request has failed.
+ *
+ * GET requests only read from the database, so their EntityManager is put into read-only mode and never flushed.
+ * Resource methods for GET requests don't need to begin a transaction.
+ */
+@Provider
+@PreMatching
+public class EntityManagerFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    // Requests are processed on a single thread, from the request filter through to the response filter
+    private static final ThreadLocal<EntityManager> _currentEntityManager = new ThreadLocal<>();
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+
+        // Close any EntityManager left behind by a request that failed without a response
+        close(_currentEntityManager.get());
+
+        EntityManager em = PersistenceManager.instance().createEntityManager();
+        if (HttpMethod.GET.equals(requestContext.getMethod())) {
+            Session session = em.unwrap(Session.class);
+            session.setDefaultReadOnly(true);
+            session.setHibernateFlushMode(FlushMode.MANUAL);
+        }
+        _currentEntityManager.set(em);
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        release();
+    }
+
+    /**
+     * Rolls back any active transaction of the current thread's EntityManager and closes it
+     */
+    static void release() {
+        close(_currentEntityManager.get());
+        _currentEntityManager.remove();
+    }
+
+    /**
+     * Returns the EntityManager for the request being processed by the current thread
+     * @return the request's EntityManager
+     * @throws IllegalStateException if the current thread isn't processing a request
+     */
+    public static EntityManager currentEntityManager() {
+        EntityManager em = _currentEntityManager.get();
+        if (em == null) {
+            throw new IllegalStateException("No EntityManager has been opened for the current request");
+        }
+        return em;
+    }
+
+    private static void close(EntityManager em) {
+        if (em == null || !em.isOpen()) {
+            return;
+        }
+        try {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+        } finally {
+            em.close();
+        }
+    }
+}
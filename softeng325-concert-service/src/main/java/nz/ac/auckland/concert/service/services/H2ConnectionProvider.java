@@ -0,0 +1,91 @@
+package nz.ac.auckland.concert.service.services;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.Stoppable;
+import org.h2.jdbcx.JdbcConnectionPool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Hibernate ConnectionProvider backed by H2's JdbcConnectionPool. Unlike Hibernate's built-in pool, which fails as
+ * soon as all of its connections are in use, a request for a connection waits (for up to the pool's login timeout)
+ * until one is returned. The number of open connections therefore stays at or below the configured pool size
+ * however many requests are being processed.
+ *
+ * The pool is configured from the persistence unit's JDBC URL, user and password, and from the
+ * hibernate.connection.pool_size property.
+ */
+public class H2ConnectionProvider implements ConnectionProvider, Configurable, Stoppable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int DEFAULT_POOL_SIZE = 20;
+
+    private JdbcConnectionPool _pool;
+
+    // Configurable and Wrapped declare raw types, which overriding methods must keep
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void configure(Map settings) {
+        String url = setting(settings, AvailableSettings.URL, AvailableSettings.JPA_JDBC_URL);
+        String user = setting(settings, AvailableSettings.USER, AvailableSettings.JPA_JDBC_USER);
+        String password = setting(settings, AvailableSettings.PASS, AvailableSettings.JPA_JDBC_PASSWORD);
+        String poolSize = setting(settings, AvailableSettings.POOL_SIZE, AvailableSettings.POOL_SIZE);
+
+        _pool = JdbcConnectionPool.create(url, user, password);
+        _pool.setMaxConnections(poolSize == null ? DEFAULT_POOL_SIZE : Integer.parseInt(poolSize));
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return _pool.getConnection();
+    }
+
+    @Override
+    public void closeConnection(Connection connection) throws SQLException {
+
+        // Closing a pooled connection returns it to the pool
+        connection.close();
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    public void stop() {
+        _pool.dispose();
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public boolean isUnwrappableAs(Class unwrapType) {
+        return ConnectionProvider.class.equals(unwrapType) || H2ConnectionProvider.class.isAssignableFrom(unwrapType);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (isUnwrappableAs(unwrapType)) {
+            return (T) this;
+        }
+        throw new UnknownUnwrapTypeException(unwrapType);
+    }
+
+    /**
+     * Returns a Hibernate setting, falling back to its JPA equivalent
+     */
+    private static String setting(Map<?, ?> settings, String name, String jpaName) {
+        Object value = settings.get(name);
+        if (value == null) {
+            value = settings.get(jpaName);
+        }
+        return value == null ? null : value.toString();
+    }
+}
@@ -0,0 +1,124 @@
+package nz.ac.auckland.concert.service.services;
+
+import nz.ac.auckland.concert.service.inventory.ShowKey;
+import nz.ac.auckland.concert.service.util.ServiceConfig;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Singleton class that decides how long reserved seats are held for, per concert date. Holds last
+ * ServiceConfig.HOLD_DURATION_MAX_SECONDS while a show is quiet, and shorten towards
+ * ServiceConfig.HOLD_DURATION_MIN_SECONDS as the show's reservation request rate and the share of its holds that are
+ * never confirmed rise, so that seats locked in abandoned holds are freed sooner during a rush.
+ *
+ * Requests, holds and bookings are counted with exponential decay (half-life
+ * ServiceConfig.HOLD_POLICY_HALF_LIFE_SECONDS), so the policy follows recent traffic.
+ */
+public class HoldDurationPolicy {
+
+    private static final HoldDurationPolicy _instance = new HoldDurationPolicy(
+            ServiceConfig.HOLD_DURATION_MIN_SECONDS, ServiceConfig.HOLD_DURATION_MAX_SECONDS,
+            ServiceConfig.HOLD_POLICY_BUSY_REQUESTS_PER_SECOND, ServiceConfig.HOLD_POLICY_HALF_LIFE_SECONDS);
+
+    private final int _minSeconds;
+    private final int _maxSeconds;
+    private final double _busyRequestsPerSecond;
+    private final double _halfLifeMillis;
+
+    private final ConcurrentMap<ShowKey, Activity> _activity = new ConcurrentHashMap<>();
+
+    protected HoldDurationPolicy(int minSeconds, int maxSeconds, double busyRequestsPerSecond,
+                                 long halfLifeSeconds) {
+        _minSeconds = Math.min(minSeconds, maxSeconds);
+        _maxSeconds = maxSeconds;
+        _busyRequestsPerSecond = busyRequestsPerSecond;
+        _halfLifeMillis = halfLifeSeconds * 1000.0;
+    }
+
+    /**
+     * Records a reservation request for a show
+     */
+    public void requested(ShowKey show) {
+        activityFor(show).add(System.currentTimeMillis(), 1, 0, 0);
+    }
+
+    /**
+     * Records that seats were held for a reservation request
+     */
+    public void held(ShowKey show) {
+        activityFor(show).add(System.currentTimeMillis(), 0, 1, 0);
+    }
+
+    /**
+     * Records that a hold on a show was confirmed
+     */
+    public void booked(ShowKey show) {
+        activityFor(show).add(System.currentTimeMillis(), 0, 0, 1);
+    }
+
+    /**
+     * Returns how long seats reserved now for a show should be held for
+     * @param show the show
+     * @return the hold duration, between ServiceConfig.HOLD_DURATION_MIN_SECONDS and
+     * ServiceConfig.HOLD_DURATION_MAX_SECONDS
+     */
+    public int getHoldSeconds(ShowKey show) {
+        Activity activity = _activity.get(show);
+        if (activity == null) {
+            return _maxSeconds;
+        }
+        double pressure = activity.getPressure(System.currentTimeMillis());
+        return (int) Math.round(_maxSeconds - (_maxSeconds - _minSeconds) * pressure);
+    }
+
+    private Activity activityFor(ShowKey show) {
+        return _activity.computeIfAbsent(show, s -> new Activity());
+    }
+
+    public static HoldDurationPolicy instance() {
+        return _instance;
+    }
+
+    /**
+     * Decayed counts of a show's requests, holds and bookings
+     */
+    private class Activity {
+        private double _requests;
+        private double _holds;
+        private double _bookings;
+        private long _updated = System.currentTimeMillis();
+
+        synchronized void add(long now, int requests, int holds, int bookings) {
+            decay(now);
+            _requests += requests;
+            _holds += holds;
+            _bookings += bookings;
+        }
+
+        /**
+         * @return how busy the show is, from 0 (quiet, or every hold is confirmed) to 1 (at least
+         * ServiceConfig.HOLD_POLICY_BUSY_REQUESTS_PER_SECOND, and no hold is confirmed)
+         */
+        synchronized double getPressure(long now) {
+            decay(now);
+
+            // A decayed count approximates the rate times the mean lifetime of a count
+            double requestsPerSecond = _requests / (_halfLifeMillis / 1000 / Math.log(2));
+            double load = Math.min(1, requestsPerSecond / _busyRequestsPerSecond);
+            double unconfirmed = _holds <= 0 ? 0 : Math.max(0, Math.min(1, 1 - _bookings / _holds));
+            return load * unconfirmed;
+        }
+
+        private void decay(long now) {
+            if (now <= _updated) {
+                return;
+            }
+            double factor = Math.pow(0.5, (now - _updated) / _halfLifeMillis);
+            _requests *= factor;
+            _holds *= factor;
+            _bookings *= factor;
+            _updated = now;
+        }
+    }
+}
@@ -1,8 +1,24 @@
 package nz.ac.auckland.concert.service.services;
 
+import nz.ac.auckland.concert.service.util.ServiceConfig;
+import nz.ac.auckland.concert.service.domain.jpa.Concert;
+import nz.ac.auckland.concert.service.domain.jpa.Performer;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Singleton class that manages an EntityManagerFactory. When a
@@ -12,26 +28,110 @@ import javax.persistence.Persistence;
  * 
  * When a Web service application component (e.g. a resource object) requires a 
  * persistence context, it should call the PersistentManager's 
- * createEntityManager() method to acquire one.
+ * createEntityManager() method to acquire one. Resource objects should instead
+ * use the EntityManager that EntityManagerFilter opens for each request.
+ * 
+ * The PersistenceManager is created when the class is loaded, so instance() is
+ * safe to call from any thread.
+ * 
+ * When ServiceConfig.QUERY_STATISTICS_INTERVAL_SECONDS is set, Hibernate
+ * gathers statistics and reports on query plan reuse and second-level cache
+ * use are logged at that interval.
  * 
  */
 public class PersistenceManager {
-	private static PersistenceManager _instance = null;
+	private static final PersistenceManager _instance = new PersistenceManager();
+	
+	private Logger _logger = LoggerFactory
+			.getLogger(PersistenceManager.class);
 	
-	private EntityManagerFactory _entityManagerFactory;
+	private final EntityManagerFactory _entityManagerFactory;
 	
 	protected PersistenceManager() {
-		_entityManagerFactory = Persistence.createEntityManagerFactory("nz.ac.auckland.concert");
+		Map<String, Object> properties = new HashMap<>();
+		long interval = ServiceConfig.QUERY_STATISTICS_INTERVAL_SECONDS;
+		if (interval > 0) {
+			properties.put(AvailableSettings.GENERATE_STATISTICS, "true");
+		}
+		_entityManagerFactory = Persistence.createEntityManagerFactory("nz.ac.auckland.concert", properties);
+		
+		if (interval > 0) {
+			ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "query-statistics");
+				thread.setDaemon(true);
+				return thread;
+			});
+			reporter.scheduleAtFixedRate(() -> {
+				_logger.info(getQueryPlanReport());
+				_logger.info(getSecondLevelCacheReport());
+			}, interval, interval, TimeUnit.SECONDS);
+		}
 	}
 	
 	public EntityManager createEntityManager() {
 		return _entityManagerFactory.createEntityManager();
 	}
 	
-	public static PersistenceManager instance() {
-		if(_instance == null) {
-			_instance = new PersistenceManager();
+	/**
+	 * Reports how well query plans are being reused. Hibernate parses and plans
+	 * each distinct JPQL string once and caches the plan, so every execution
+	 * after the first of each distinct query is counted as a plan cache hit.
+	 * With bound parameters the number of distinct queries stays fixed, so the
+	 * hit rate should approach 100%.
+	 * 
+	 * @return a one-line summary, or a note that statistics are disabled
+	 */
+	public String getQueryPlanReport() {
+		Statistics statistics = _entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		if (!statistics.isStatisticsEnabled()) {
+			return "Query statistics are disabled";
+		}
+		
+		long executions = statistics.getQueryExecutionCount();
+		int distinctQueries = statistics.getQueries().length;
+		long hits = Math.max(0, executions - distinctQueries);
+		double hitRate = executions == 0 ? 0 : 100.0 * hits / executions;
+		
+		return String.format("Query plans: %d executions of %d distinct queries, %d plan cache hits (%.1f%%)",
+				executions, distinctQueries, hits, hitRate);
+	}
+	
+	/**
+	 * Reports hits and misses for each second-level cache region.
+	 * 
+	 * @return a one-line summary, or a note that statistics are disabled
+	 */
+	public String getSecondLevelCacheReport() {
+		Statistics statistics = _entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		if (!statistics.isStatisticsEnabled()) {
+			return "Second-level cache statistics are disabled";
 		}
+		
+		StringBuilder report = new StringBuilder(String.format(
+				"Second-level cache: %d hits, %d misses, %d puts",
+				statistics.getSecondLevelCacheHitCount(),
+				statistics.getSecondLevelCacheMissCount(),
+				statistics.getSecondLevelCachePutCount()));
+		for (String region : statistics.getSecondLevelCacheRegionNames()) {
+			SecondLevelCacheStatistics regionStatistics = statistics.getSecondLevelCacheStatistics(region);
+			report.append(String.format("; %s: %d hits, %d misses", region,
+					regionStatistics.getHitCount(), regionStatistics.getMissCount()));
+		}
+		return report.toString();
+	}
+	
+	/**
+	 * Removes the concerts and performers, and their collections, from the
+	 * second-level cache, so they're read from the database on next use.
+	 */
+	public void evictCatalogue() {
+		Cache cache = _entityManagerFactory.unwrap(SessionFactory.class).getCache();
+		cache.evictEntityRegion(Concert.class);
+		cache.evictEntityRegion(Performer.class);
+		cache.evictCollectionRegions();
+	}
+	
+	public static PersistenceManager instance() {
 		return _instance;
 	}
 
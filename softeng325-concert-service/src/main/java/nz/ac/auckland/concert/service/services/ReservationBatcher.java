@@ -0,0 +1,304 @@
+package nz.ac.auckland.concert.service.services;
+
+import nz.ac.auckland.concert.common.dto.ReservationDTO;
+import nz.ac.auckland.concert.common.dto.ReservationRequestDTO;
+import nz.ac.auckland.concert.common.dto.SeatDTO;
+import nz.ac.auckland.concert.service.domain.jpa.Concert;
+import nz.ac.auckland.concert.service.domain.jpa.Reservation;
+import nz.ac.auckland.concert.service.inventory.SeatInventory;
+import nz.ac.auckland.concert.service.inventory.ShowKey;
+import nz.ac.auckland.concert.service.inventory.ShowSeats;
+import nz.ac.auckland.concert.service.mapper.ReservationRequestMapper;
+import nz.ac.auckland.concert.service.mapper.SeatMapper;
+import nz.ac.auckland.concert.service.util.ServiceConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Singleton class that collects reservation requests for the same concert date over a short window
+ * (ServiceConfig.RESERVATION_BATCH_WINDOW_MILLIS). Seats for the whole batch are allocated in one pass (on the show's
+ * sequencer lane, if the seat engine needs one), and all of the batch's Reservations are persisted in a single
+ * transaction, which Hibernate sends to the database as JDBC batches. Each caller still receives its own
+ * ReservationDTO.
+ *
+ * A batch's transaction that conflicts with another transaction is retried here, so callers never see transient
+ * conflicts. Conflicts and retries are counted per concert by ContentionMetrics.
+ */
+public class ReservationBatcher {
+
+    private static final ReservationBatcher _instance = new ReservationBatcher(
+            ServiceConfig.RESERVATION_BATCH_WINDOW_MILLIS, ServiceConfig.RESERVATION_TRANSACTION_ATTEMPTS,
+            ServiceConfig.RESERVATION_RETRY_BACKOFF_MILLIS);
+
+    private Logger _logger = LoggerFactory
+            .getLogger(ReservationBatcher.class);
+
+    private final long _windowMillis;
+    private final int _attempts;
+    private final long _backoffMillis;
+    private final ScheduledExecutorService _flusher;
+
+    // The batch currently collecting requests for each show
+    private final ConcurrentMap<ShowKey, Batch> _openBatches = new ConcurrentHashMap<>();
+
+    protected ReservationBatcher(long windowMillis, int attempts, long backoffMillis) {
+        _windowMillis = windowMillis;
+        _attempts = attempts;
+        _backoffMillis = backoffMillis;
+        _flusher = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "reservation-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds a reservation request to the show's current batch and waits for the batch to be processed
+     * @param key the show to reserve seats for
+     * @param show the show's seat state
+     * @param request the validated reservation request
+     * @param username the user the reservation is for
+     * @return the persisted reservation, or null if there were not enough seats available
+     */
+    public ReservationDTO reserve(ShowKey key, ShowSeats show, ReservationRequestDTO request, String username) {
+        PendingReservation pending = new PendingReservation(request, username);
+
+        // A batch stops accepting requests once it starts flushing, in which case a new batch is opened
+        Batch batch = openBatch(key, show);
+        while (!batch.add(pending)) {
+            _openBatches.remove(key, batch);
+            batch = openBatch(key, show);
+        }
+
+        try {
+            return pending._result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the show's open batch, opening one and scheduling it to be flushed if necessary
+     */
+    private Batch openBatch(ShowKey key, ShowSeats show) {
+        return _openBatches.computeIfAbsent(key, k -> {
+            Batch batch = new Batch(key, show);
+            _flusher.schedule(() -> flush(batch), _windowMillis, TimeUnit.MILLISECONDS);
+            return batch;
+        });
+    }
+
+    /**
+     * Allocates seats for every request in a batch and persists the resulting reservations
+     */
+    private void flush(Batch batch) {
+        _openBatches.remove(batch._key, batch);
+        List<PendingReservation> pendings = batch.close();
+
+        try {
+            allocate(batch, pendings);
+            persist(batch, pendings);
+        } catch (RuntimeException e) {
+            _logger.error("Unable to process batch of " + pendings.size() + " reservations for " + batch._key, e);
+            for (PendingReservation pending : pendings) {
+                pending._result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Allocates seats for a batch in one pass over the show's seat state. If allocation fails part way through, the
+     * seats already allocated are given back.
+     */
+    private void allocate(Batch batch, List<PendingReservation> pendings) {
+
+        // How long reservations last depends on how busy the show is. Expiry dates are kept to the millisecond, so
+        // the one read back from the database when a reservation is confirmed matches the one in the seat state.
+        int holdSeconds = HoldDurationPolicy.instance().getHoldSeconds(batch._key);
+        LocalDateTime expiryDate = LocalDateTime.now().plusSeconds(holdSeconds).truncatedTo(ChronoUnit.MILLIS);
+
+        SeatInventory.instance().execute(batch._key, () -> {
+            try {
+                for (PendingReservation pending : pendings) {
+                    ReservationRequestDTO request = pending._request;
+                    pending._holdId = ShowSeats.newHoldId();
+                    pending._seats = batch._show.reserve(request.getNumberOfSeats(), request.getSeatType(),
+                            request.getAllocation(), pending._holdId, expiryDate);
+                    pending._expiryDate = expiryDate;
+                    pending._holdSeconds = holdSeconds;
+                }
+            } catch (RuntimeException e) {
+                for (PendingReservation pending : pendings) {
+                    if (pending._seats != null) {
+                        batch._show.release(pending._seats, pending._holdId);
+                    }
+                }
+                throw e;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Persists a batch's successful reservations in a single transaction. A transaction that conflicts with another
+     * is retried, after a random backoff, up to ServiceConfig.RESERVATION_TRANSACTION_ATTEMPTS times; the seats stay
+     * allocated meanwhile. If the transaction still fails, the batch's seats are given back.
+     */
+    private void persist(Batch batch, List<PendingReservation> pendings) {
+        List<Reservation> reservations;
+        Long concertId = batch._key.getConcertId();
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                ContentionMetrics.instance().attempted(concertId);
+                reservations = persistOnce(batch, pendings);
+                break;
+            } catch (RuntimeException e) {
+                if (ContentionMetrics.isConflict(e) && attempt < _attempts) {
+                    ContentionMetrics.instance().retried(concertId);
+                    backOff(attempt);
+                    continue;
+                }
+                if (ContentionMetrics.isConflict(e)) {
+                    ContentionMetrics.instance().exhausted(concertId);
+                }
+
+                // The reservations weren't recorded, so give back the seats they still hold
+                SeatInventory.instance().execute(batch._key, () -> {
+                    for (PendingReservation pending : pendings) {
+                        batch._show.release(pending._seats, pending._holdId);
+                    }
+                    return null;
+                });
+                throw e;
+            }
+        }
+
+        // Send each caller its own reservation
+        for (int i = 0; i < pendings.size(); i++) {
+            PendingReservation pending = pendings.get(i);
+            Reservation reservation = reservations.get(i);
+            pending._result.complete(reservation == null ? null :
+                    new ReservationDTO(reservation.getId(), pending._request, pending._seats,
+                            pending._holdSeconds));
+        }
+    }
+
+    /**
+     * Persists a batch's successful reservations in a single transaction
+     * @return the reservations, with null for each request that wasn't given seats
+     */
+    private List<Reservation> persistOnce(Batch batch, List<PendingReservation> pendings) {
+        List<Reservation> reservations = new ArrayList<>();
+        EntityManager em = PersistenceManager.instance().createEntityManager();
+
+        try {
+            em.getTransaction().begin();
+
+            Concert concert = em.getReference(Concert.class, batch._key.getConcertId());
+            for (PendingReservation pending : pendings) {
+                if (pending._seats.isEmpty()) {
+                    reservations.add(null);
+                    continue;
+                }
+                Reservation reservation = new Reservation(pending._holdId,
+                        ReservationRequestMapper.toDomain(pending._request, concert),
+                        SeatMapper.toDomain(pending._seats), pending._expiryDate, pending._username);
+                em.persist(reservation);
+                reservations.add(reservation);
+            }
+
+            em.getTransaction().commit();
+            return reservations;
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    /**
+     * Waits a random time before a retry, up to the base backoff doubled for each earlier retry
+     */
+    private void backOff(int attempt) {
+        long limit = _backoffMillis << Math.min(attempt - 1, 10);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(limit + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static ReservationBatcher instance() {
+        return _instance;
+    }
+
+    /**
+     * Reservation requests collected for one show
+     */
+    private static class Batch {
+        private final ShowKey _key;
+        private final ShowSeats _show;
+        private final List<PendingReservation> _pendings = new ArrayList<>();
+        private boolean _closed = false;
+
+        Batch(ShowKey key, ShowSeats show) {
+            _key = key;
+            _show = show;
+        }
+
+        synchronized boolean add(PendingReservation pending) {
+            if (_closed) {
+                return false;
+            }
+            _pendings.add(pending);
+            return true;
+        }
+
+        synchronized List<PendingReservation> close() {
+            _closed = true;
+            return _pendings;
+        }
+    }
+
+    /**
+     * A reservation request waiting for its batch to be processed
+     */
+    private static class PendingReservation {
+        private final ReservationRequestDTO _request;
+        private final String _username;
+        private final CompletableFuture<ReservationDTO> _result = new CompletableFuture<>();
+        private Set<SeatDTO> _seats;
+        private long _holdId;
+        private LocalDateTime _expiryDate;
+        private int _holdSeconds;
+
+        PendingReservation(ReservationRequestDTO request, String username) {
+            _request = request;
+            _username = username;
+        }
+    }
+}
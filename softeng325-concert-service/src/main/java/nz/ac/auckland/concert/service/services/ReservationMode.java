@@ -0,0 +1,16 @@
+package nz.ac.auckland.concert.service.services;
+
+/**
+ * Enumerated type for the ways the Web service can hold reserved seats until they are confirmed. The mode is chosen
+ * with ServiceConfig.RESERVATION_MODE.
+ *
+ * Persisted  each reservation is stored as a Reservation, so it survives a restart and every service node sharing the
+ *            database can confirm it. Reservations are written in batches by ReservationBatcher.
+ * Signed     reserved seats are only held in the show's in-memory seat state, and the client is given a signed hold
+ *            token (see SeatHold) instead of a stored Reservation. Nothing is written until the hold is confirmed,
+ *            when only the Booking is stored. A hold can only be confirmed by a node that shares the seat state it
+ *            was made in, e.g. with the Mapped seat engine.
+ */
+public enum ReservationMode {
+    Persisted, Signed
+}
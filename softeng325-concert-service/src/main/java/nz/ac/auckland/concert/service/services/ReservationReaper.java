@@ -0,0 +1,156 @@
+package nz.ac.auckland.concert.service.services;
+
+import nz.ac.auckland.concert.service.domain.jpa.Reservation;
+import nz.ac.auckland.concert.service.util.ServiceConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Singleton class that periodically deletes expired reservations from the database, so requests never pay for the
+ * cleanup. Requests ignore expired reservations by filtering on their expiry date.
+ *
+ * Each run deletes expired reservations in batches of at most ServiceConfig.RESERVATION_REAPER_BATCH_SIZE, each
+ * batch in its own short transaction: the batch's seats are deleted with one statement and its reservations with one
+ * bulk JPQL DELETE.
+ *
+ * When ServiceConfig.CONTENTION_REPORT_INTERVAL_SECONDS is set, a report of the reaper's work is logged at that
+ * interval, alongside ContentionMetrics' report.
+ */
+public class ReservationReaper {
+
+    private static final ReservationReaper _instance = new ReservationReaper(
+            ServiceConfig.RESERVATION_REAPER_INTERVAL_SECONDS, ServiceConfig.RESERVATION_REAPER_BATCH_SIZE,
+            ServiceConfig.CONTENTION_REPORT_INTERVAL_SECONDS);
+
+    private Logger _logger = LoggerFactory
+            .getLogger(ReservationReaper.class);
+
+    private final long _intervalSeconds;
+    private final int _batchSize;
+    private final long _reportIntervalSeconds;
+
+    private boolean _started = false;
+
+    // Metrics
+    private final AtomicLong _runs = new AtomicLong();
+    private final AtomicLong _reservationsReaped = new AtomicLong();
+    private final AtomicLong _totalMillis = new AtomicLong();
+    private volatile long _lastMillis;
+
+    protected ReservationReaper(long intervalSeconds, int batchSize, long reportIntervalSeconds) {
+        _intervalSeconds = intervalSeconds;
+        _batchSize = batchSize;
+        _reportIntervalSeconds = reportIntervalSeconds;
+    }
+
+    /**
+     * Schedules the reaper to run every ServiceConfig.RESERVATION_REAPER_INTERVAL_SECONDS, if it isn't already
+     */
+    public synchronized void start() {
+        if (_started || _intervalSeconds <= 0) {
+            return;
+        }
+        _started = true;
+
+        ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reservation-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reaper.scheduleWithFixedDelay(() -> {
+            try {
+                reap(LocalDateTime.now());
+            } catch (RuntimeException e) {
+                _logger.error("Unable to reap expired reservations", e);
+            }
+        }, _intervalSeconds, _intervalSeconds, TimeUnit.SECONDS);
+        if (_reportIntervalSeconds > 0) {
+            reaper.scheduleAtFixedRate(() -> _logger.info(getReport()), _reportIntervalSeconds,
+                    _reportIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Deletes every reservation that expired before a given time
+     * @param now the time
+     * @return the number of reservations deleted
+     */
+    public int reap(LocalDateTime now) {
+        long start = System.nanoTime();
+
+        int reaped = 0;
+        int batch;
+        do {
+            batch = reapBatch(now);
+            reaped += batch;
+        } while (batch == _batchSize);
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        _runs.incrementAndGet();
+        _reservationsReaped.addAndGet(reaped);
+        _totalMillis.addAndGet(millis);
+        _lastMillis = millis;
+
+        if (reaped > 0) {
+            _logger.info("Reaped " + reaped + " expired reservations in " + millis + "ms");
+        }
+        return reaped;
+    }
+
+    /**
+     * Deletes up to one batch of expired reservations in a single transaction
+     */
+    private int reapBatch(LocalDateTime now) {
+        EntityManager em = PersistenceManager.instance().createEntityManager();
+
+        try {
+            em.getTransaction().begin();
+
+            List<Long> ids = em.createNamedQuery(Reservation.FIND_EXPIRED_IDS, Long.class)
+                    .setParameter("now", now)
+                    .setMaxResults(_batchSize)
+                    .getResultList();
+
+            if (!ids.isEmpty()) {
+                em.createNamedQuery(Reservation.DELETE_SEATS_BY_IDS)
+                        .setParameter("ids", ids)
+                        .executeUpdate();
+                em.createNamedQuery(Reservation.DELETE_BY_IDS)
+                        .setParameter("ids", ids)
+                        .executeUpdate();
+            }
+
+            em.getTransaction().commit();
+            return ids.size();
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    /**
+     * Reports how much work the reaper has done.
+     *
+     * @return a one-line summary
+     */
+    public String getReport() {
+        long runs = _runs.get();
+        return String.format("Reservation reaper: %d runs, %d reservations reaped, %dms in total (%.1fms per run), " +
+                        "last run %dms", runs, _reservationsReaped.get(), _totalMillis.get(),
+                runs == 0 ? 0.0 : (double) _totalMillis.get() / runs, _lastMillis);
+    }
+
+    public static ReservationReaper instance() {
+        return _instance;
+    }
+}
@@ -0,0 +1,38 @@
+package nz.ac.auckland.concert.service.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * ExceptionMapper that handles every exception thrown while processing a request. It rolls back and closes the
+ * request's EntityManager before anything else happens, so a failed request can't keep its transaction, connection
+ * or table locks (see EntityManagerFilter).
+ *
+ * A WebApplicationException keeps its own response; any other exception, e.g. a NoResultException for a missing
+ * entity, is answered with 500 Internal Server Error.
+ */
+@Provider
+public class UnhandledExceptionMapper implements ExceptionMapper<Throwable> {
+
+    private Logger _logger = LoggerFactory
+            .getLogger(UnhandledExceptionMapper.class);
+
+    @Override
+    public Response toResponse(Throwable exception) {
+        EntityManagerFilter.release();
+
+        if (exception instanceof WebApplicationException) {
+            return ((WebApplicationException) exception).getResponse();
+        }
+
+        _logger.error("Unable to process request", exception);
+        return Response
+                .status(Response.Status.INTERNAL_SERVER_ERROR)
+                .build();
+    }
+}
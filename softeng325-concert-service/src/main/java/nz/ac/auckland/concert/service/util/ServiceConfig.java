@@ -0,0 +1,169 @@
+package nz.ac.auckland.concert.service.util;
+
+import nz.ac.auckland.concert.service.auth.AuthenticationMode;
+import nz.ac.auckland.concert.service.inventory.SeatEngine;
+import nz.ac.auckland.concert.service.services.ReservationMode;
+import nz.ac.auckland.concert.utility.Config;
+
+import java.io.File;
+
+/**
+ * Class with configuration data for the Web service. Each value can be overridden with a system property of the same
+ * name, e.g. -Dconcert.reservationBatchWindowMillis=10.
+ *
+ */
+public class ServiceConfig {
+
+    /**
+     * How long reservation requests for the same concert date are collected before their seats are allocated and
+     * persisted together. A window of 0 flushes each batch as soon as possible.
+     */
+    public static final long RESERVATION_BATCH_WINDOW_MILLIS =
+            Long.getLong("concert.reservationBatchWindowMillis", 5);
+
+    /**
+     * Whether reservations are recorded in the database or only held in memory until they are confirmed (see
+     * ReservationMode).
+     */
+    public static final ReservationMode RESERVATION_MODE = ReservationMode.valueOf(
+            System.getProperty("concert.reservationMode", ReservationMode.Persisted.name()));
+
+    /**
+     * The shortest time reserved seats are held for, used when a concert date is busy and most of its holds are
+     * never confirmed (see HoldDurationPolicy).
+     */
+    public static final int HOLD_DURATION_MIN_SECONDS =
+            Integer.getInteger("concert.holdDurationMinSeconds", 2);
+
+    /**
+     * The longest time reserved seats are held for, used when a concert date is quiet.
+     */
+    public static final int HOLD_DURATION_MAX_SECONDS =
+            Integer.getInteger("concert.holdDurationMaxSeconds", Config.RESERVATION_EXPIRY_TIME_IN_SECONDS);
+
+    /**
+     * The reservation request rate for a concert date at which HoldDurationPolicy considers it fully busy.
+     */
+    public static final int HOLD_POLICY_BUSY_REQUESTS_PER_SECOND =
+            Integer.getInteger("concert.holdPolicyBusyRequestsPerSecond", 20);
+
+    /**
+     * How quickly HoldDurationPolicy forgets past traffic: a request counts half as much after this long.
+     */
+    public static final long HOLD_POLICY_HALF_LIFE_SECONDS =
+            Long.getLong("concert.holdPolicyHalfLifeSeconds", 10);
+
+    /**
+     * The most users per second admitted from the waiting room of each concert date (see WaitingRoom). When this is
+     * 0 there is no waiting room, and reservations can be made without being admitted.
+     */
+    public static final int WAITING_ROOM_ADMISSIONS_PER_SECOND =
+            Integer.getInteger("concert.waitingRoomAdmissionsPerSecond", 0);
+
+    /**
+     * The fraction of reservation transactions that may conflict before WaitingRoom slows admissions for a concert.
+     */
+    public static final double WAITING_ROOM_CONFLICT_RATE_LIMIT =
+            Double.parseDouble(System.getProperty("concert.waitingRoomConflictRateLimit", "0.1"));
+
+    /**
+     * How long a waiting room token is accepted after the user joined the waiting room, covering both the wait and
+     * the reservations made once admitted.
+     */
+    public static final long WAITING_ROOM_TOKEN_TTL_SECONDS =
+            Long.getLong("concert.waitingRoomTokenTtlSeconds", 30 * 60);
+
+    /**
+     * How long a user admitted from the waiting room may make reservations for, after which they must join the
+     * waiting room again.
+     */
+    public static final long WAITING_ROOM_ADMISSION_WINDOW_SECONDS =
+            Long.getLong("concert.waitingRoomAdmissionWindowSeconds", 60);
+
+    /**
+     * How the in-memory seat state of each concert date is held and updated (see SeatEngine).
+     */
+    public static final SeatEngine SEAT_ENGINE =
+            SeatEngine.valueOf(System.getProperty("concert.seatEngine", SeatEngine.Bitmap.name()));
+
+    /**
+     * How many shows' seat state is allocated at a time by the OffHeap seat engine.
+     */
+    public static final int OFF_HEAP_SHOWS_PER_SLAB =
+            Integer.getInteger("concert.offHeapShowsPerSlab", 1024);
+
+    /**
+     * Where the Mapped seat engine keeps its seat files. Service processes on the same host share seat state by
+     * using the same directory.
+     */
+    public static final String SEAT_FILE_DIRECTORY = System.getProperty("concert.seatFileDirectory",
+            new File(System.getProperty("java.io.tmpdir"), "concert-seats").getPath());
+
+    /**
+     * Whether the service frees every seat in the Mapped seat engine's seat files when it starts. Off by default,
+     * since other processes may be using the files; only set it for a process that starts against an empty database
+     * with no other process running.
+     */
+    public static final boolean SEAT_FILE_RESET = Boolean.getBoolean("concert.seatFileReset");
+
+    /**
+     * How often query plan statistics are logged by PersistenceManager. Hibernate only gathers statistics when this
+     * is greater than 0.
+     */
+    public static final long QUERY_STATISTICS_INTERVAL_SECONDS =
+            Long.getLong("concert.queryStatisticsIntervalSeconds", 0);
+
+    /**
+     * How long an authentication token is accepted after the user was created or last authenticated.
+     */
+    public static final long AUTHENTICATION_TOKEN_TTL_SECONDS =
+            Long.getLong("concert.authenticationTokenTtlSeconds", 24 * 60 * 60);
+
+    /**
+     * How many times a transaction that writes reservations is attempted when it conflicts with other transactions.
+     */
+    public static final int RESERVATION_TRANSACTION_ATTEMPTS =
+            Integer.getInteger("concert.reservationTransactionAttempts", 4);
+
+    /**
+     * Base delay before retrying a conflicting reservation transaction. The delay before each retry is random, up to
+     * this value doubled for every earlier retry, so that conflicting transactions spread out.
+     */
+    public static final long RESERVATION_RETRY_BACKOFF_MILLIS =
+            Long.getLong("concert.reservationRetryBackoffMillis", 10);
+
+    /**
+     * How often ContentionMetrics logs a report of reservation conflicts per concert, and ReservationReaper a report
+     * of the expired reservations it has deleted. No reports are logged if this is 0.
+     */
+    public static final long CONTENTION_REPORT_INTERVAL_SECONDS =
+            Long.getLong("concert.contentionReportIntervalSeconds", 0);
+
+    /**
+     * How often expired reservations are deleted from the database by ReservationReaper. The reaper doesn't run if
+     * this is 0.
+     */
+    public static final long RESERVATION_REAPER_INTERVAL_SECONDS =
+            Long.getLong("concert.reservationReaperIntervalSeconds", 10);
+
+    /**
+     * The most expired reservations ReservationReaper deletes in one transaction.
+     */
+    public static final int RESERVATION_REAPER_BATCH_SIZE =
+            Integer.getInteger("concert.reservationReaperBatchSize", 500);
+
+    /**
+     * How authentication tokens are issued and checked (see AuthenticationMode).
+     */
+    public static final AuthenticationMode AUTHENTICATION_MODE = AuthenticationMode.valueOf(
+            System.getProperty("concert.authenticationMode", AuthenticationMode.Indexed.name()));
+
+    /**
+     * Keys used to sign authentication tokens in the Signed authentication mode, as a comma-separated list of
+     * keyId:base64Secret pairs. The first key signs new tokens; all of them are accepted (see TokenSigner).
+     */
+    public static final String AUTHENTICATION_KEYS = System.getProperty("concert.authenticationKeys");
+
+    // This is utility class, so hide the constructor to prevent instantiation.
+    private ServiceConfig() {}
+}
@@ -0,0 +1,324 @@
+package nz.ac.auckland.concert.service.waitingroom;
+
+import nz.ac.auckland.concert.common.dto.QueuePositionDTO;
+import nz.ac.auckland.concert.service.auth.TokenSigner;
+import nz.ac.auckland.concert.service.inventory.ShowKey;
+import nz.ac.auckland.concert.service.services.ContentionMetrics;
+import nz.ac.auckland.concert.service.util.ServiceConfig;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Singleton class that queues users before they reserve seats, so that an on-sale rush for a concert date reaches
+ * the reservation engine at a rate it can sustain. Each concert date has its own first-in, first-out queue. A user
+ * who joins is given the next position and a token signed by TokenSigner:
+ *
+ *     concert id ";" date ";" queue epoch ";" position ";" username
+ *
+ * Each queue has a random epoch, so positions in a queue that has been emptied and started again don't accept tokens
+ * issued for the same positions in the old queue.
+ *
+ * Checking a token's status needs no database access, so polling is cheap. A user who joins again while they still
+ * have a position is given the same position, so joining repeatedly doesn't improve a user's place.
+ *
+ * A background thread admits positions in order, up to ServiceConfig.WAITING_ROOM_ADMISSIONS_PER_SECOND per concert
+ * date. Unused admissions aren't saved up, so an idle queue can't release a burst. If more than
+ * ServiceConfig.WAITING_ROOM_CONFLICT_RATE_LIMIT of a concert's reservation transactions conflicted over the last
+ * second (see ContentionMetrics), its admission rate is halved, down to a tenth of the maximum. Otherwise the rate
+ * recovers by a tenth of the maximum each second. This keeps admitted throughput near what the database sustains,
+ * instead of collapsing into retries.
+ *
+ * An admitted user may reserve seats for ServiceConfig.WAITING_ROOM_ADMISSION_WINDOW_SECONDS. After that their
+ * position lapses, its token is no longer accepted and they must join again, at the back of the queue.
+ *
+ * When the admission rate is 0 the waiting room is disabled, and every position is admitted immediately.
+ */
+public class WaitingRoom {
+
+    private static final String PURPOSE = "waiting-room";
+    private static final String SEPARATOR = ";";
+
+    // How often positions are admitted, and how often each queue's admission rate is adjusted
+    private static final long TICK_MILLIS = 100;
+    private static final long ADJUST_MILLIS = 1000;
+
+    private static final WaitingRoom _instance = new WaitingRoom(ServiceConfig.WAITING_ROOM_ADMISSIONS_PER_SECOND,
+            ServiceConfig.WAITING_ROOM_CONFLICT_RATE_LIMIT, ServiceConfig.WAITING_ROOM_TOKEN_TTL_SECONDS,
+            ServiceConfig.WAITING_ROOM_ADMISSION_WINDOW_SECONDS);
+
+    private final double _maxRate;
+    private final double _conflictRateLimit;
+    private final long _tokenTtlSeconds;
+    private final long _admissionWindowMillis;
+
+    private final ConcurrentMap<ShowKey, Queue> _queues = new ConcurrentHashMap<>();
+
+    protected WaitingRoom(int admissionsPerSecond, double conflictRateLimit, long tokenTtlSeconds,
+                          long admissionWindowSeconds) {
+        _maxRate = admissionsPerSecond;
+        _conflictRateLimit = conflictRateLimit;
+        _tokenTtlSeconds = tokenTtlSeconds;
+        _admissionWindowMillis = admissionWindowSeconds * 1000;
+
+        if (isEnabled()) {
+            ScheduledExecutorService admitter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "waiting-room");
+                thread.setDaemon(true);
+                return thread;
+            });
+            admitter.scheduleAtFixedRate(this::admit, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return true if users must be admitted from the waiting room before reserving seats
+     */
+    public boolean isEnabled() {
+        return _maxRate > 0;
+    }
+
+    /**
+     * Adds a user to the back of a concert date's queue, unless they already have a position in it that hasn't lapsed
+     * @param show the concert date
+     * @param username the user
+     * @return the user's place in the queue, including its token
+     */
+    public QueuePositionDTO join(ShowKey show, String username) {
+        Queue queue = _queues.computeIfAbsent(show, Queue::new);
+        long now = System.currentTimeMillis();
+        long position = queue._positions.compute(username, (u, current) ->
+                current != null && !queue.hasLapsed(current, now) ? current : queue._joined.incrementAndGet());
+
+        String subject = show.getConcertId() + SEPARATOR + show.getDate() + SEPARATOR + queue._epoch + SEPARATOR +
+                position + SEPARATOR + username;
+        String token = TokenSigner.instance().sign(PURPOSE, subject,
+                System.currentTimeMillis() / 1000 + _tokenTtlSeconds);
+        return queue.describe(position, token);
+    }
+
+    /**
+     * Returns the current status of a place in a queue
+     * @param token the place's token
+     * @return the place, or null if the token isn't accepted or the place has lapsed
+     */
+    public QueuePositionDTO getPosition(String token) {
+        Ticket ticket = Ticket.verify(token);
+        if (ticket == null) {
+            return null;
+        }
+        Queue queue = queueOf(ticket);
+        if (queue == null || ticket._position > queue._joined.get() ||
+                queue.hasLapsed(ticket._position, System.currentTimeMillis())) {
+            return null;
+        }
+        return queue.describe(ticket._position, token);
+    }
+
+    /**
+     * Checks whether a user has been admitted to reserve seats for a concert date
+     * @param token the user's waiting room token
+     * @param show the concert date
+     * @param username the user
+     * @return true if the token was issued to the user for the concert date and its position has been admitted and
+     * hasn't lapsed
+     */
+    public boolean isAdmitted(String token, ShowKey show, String username) {
+        Ticket ticket = Ticket.verify(token);
+        if (ticket == null || !ticket._show.equals(show) || !ticket._username.equals(username)) {
+            return false;
+        }
+        Queue queue = queueOf(ticket);
+        return queue != null && ticket._position <= queue._joined.get() && queue.isAdmitted(ticket._position) &&
+                !queue.hasLapsed(ticket._position, System.currentTimeMillis());
+    }
+
+    /**
+     * Empties every queue. Tokens issued before this are no longer accepted, since the queues that replace them have
+     * new epochs.
+     */
+    public void clear() {
+        _queues.clear();
+    }
+
+    /**
+     * Returns the queue a ticket was issued for, or null if that queue no longer exists
+     */
+    private Queue queueOf(Ticket ticket) {
+        Queue queue = _queues.get(ticket._show);
+        return queue != null && queue._epoch == ticket._epoch ? queue : null;
+    }
+
+    /**
+     * Admits the next positions of every queue
+     */
+    private void admit() {
+        long now = System.currentTimeMillis();
+        for (Queue queue : _queues.values()) {
+            queue.admit(now);
+        }
+    }
+
+    public static WaitingRoom instance() {
+        return _instance;
+    }
+
+    /**
+     * A concert date's queue. Positions are admitted by the admitter thread only.
+     */
+    private class Queue {
+        private final ShowKey _show;
+        private final long _epoch = ThreadLocalRandom.current().nextLong();
+
+        // The last position given out, and the last position admitted
+        private final AtomicLong _joined = new AtomicLong();
+        private volatile long _admitted;
+
+        // Each user's current position
+        private final ConcurrentMap<String, Long> _positions = new ConcurrentHashMap<>();
+
+        // When positions were admitted, keyed by the last position admitted at the time, and the last position
+        // whose admission has lapsed
+        private final ConcurrentNavigableMap<Long, Long> _admissions = new ConcurrentSkipListMap<>();
+        private volatile long _lapsed;
+
+        // Admissions per second, and admissions earned but not yet made
+        private volatile double _rate = _maxRate;
+        private double _credit;
+
+        private long _lastAdjusted = System.currentTimeMillis();
+        private long _lastAttempts;
+        private long _lastConflicts;
+
+        Queue(ShowKey show) {
+            _show = show;
+            _lastAttempts = ContentionMetrics.instance().getAttempts(show.getConcertId());
+            _lastConflicts = ContentionMetrics.instance().getConflicts(show.getConcertId());
+        }
+
+        boolean isAdmitted(long position) {
+            return !isEnabled() || position <= _admitted;
+        }
+
+        /**
+         * @return true if a position was admitted longer ago than the admission window
+         */
+        boolean hasLapsed(long position, long now) {
+            if (!isEnabled() || position > _admitted) {
+                return false;
+            }
+            if (position <= _lapsed) {
+                return true;
+            }
+            Map.Entry<Long, Long> admission = _admissions.ceilingEntry(position);
+            return admission == null || now - admission.getValue() > _admissionWindowMillis;
+        }
+
+        QueuePositionDTO describe(long position, String token) {
+            long admitted = _admitted;
+            boolean isAdmitted = isAdmitted(position);
+            long peopleAhead = isAdmitted ? 0 : position - admitted - 1;
+            long estimatedWaitSeconds = isAdmitted ? 0 : (long) Math.ceil((position - admitted) / _rate);
+            return new QueuePositionDTO(_show.getConcertId(), _show.getDate(), position, peopleAhead, isAdmitted,
+                    estimatedWaitSeconds, token);
+        }
+
+        void admit(long now) {
+            if (now - _lastAdjusted >= ADJUST_MILLIS) {
+                adjustRate(now);
+                forgetLapsed(now);
+            }
+
+            long waiting = _joined.get() - _admitted;
+            if (waiting <= 0) {
+                _credit = 0;
+                return;
+            }
+            _credit += _rate * TICK_MILLIS / 1000;
+            long admissions = Math.min(waiting, (long) _credit);
+            _credit = Math.min(_credit - admissions, Math.max(1, _rate * TICK_MILLIS / 1000));
+            if (admissions > 0) {
+                _admissions.put(_admitted + admissions, now);
+                _admitted += admissions;
+            }
+        }
+
+        /**
+         * Drops the admission times and user positions of positions that have lapsed
+         */
+        private void forgetLapsed(long now) {
+            Map.Entry<Long, Long> admission;
+            while ((admission = _admissions.firstEntry()) != null &&
+                    now - admission.getValue() > _admissionWindowMillis) {
+                _lapsed = admission.getKey();
+                _admissions.remove(admission.getKey());
+            }
+            for (Map.Entry<String, Long> position : _positions.entrySet()) {
+                if (hasLapsed(position.getValue(), now)) {
+                    _positions.remove(position.getKey(), position.getValue());
+                }
+            }
+        }
+
+        /**
+         * Halves the admission rate if too many of the concert's reservation transactions conflicted since the last
+         * adjustment, and otherwise raises it towards the maximum
+         */
+        private void adjustRate(long now) {
+            Long concertId = _show.getConcertId();
+            long attempts = ContentionMetrics.instance().getAttempts(concertId);
+            long conflicts = ContentionMetrics.instance().getConflicts(concertId);
+            long newAttempts = attempts - _lastAttempts;
+            long newConflicts = conflicts - _lastConflicts;
+
+            if (newAttempts > 0 && (double) newConflicts / newAttempts > _conflictRateLimit) {
+                _rate = Math.max(_maxRate / 10, _rate / 2);
+            } else {
+                _rate = Math.min(_maxRate, _rate + _maxRate / 10);
+            }
+
+            _lastAttempts = attempts;
+            _lastConflicts = conflicts;
+            _lastAdjusted = now;
+        }
+    }
+
+    /**
+     * The contents of a verified waiting room token
+     */
+    private static class Ticket {
+        private final ShowKey _show;
+        private final long _epoch;
+        private final long _position;
+        private final String _username;
+
+        private Ticket(ShowKey show, long epoch, long position, String username) {
+            _show = show;
+            _epoch = epoch;
+            _position = position;
+            _username = username;
+        }
+
+        static Ticket verify(String token) {
+            String subject = TokenSigner.instance().verify(PURPOSE, token);
+            if (subject == null) {
+                return null;
+            }
+            String[] parts = subject.split(SEPARATOR, 5);
+            if (parts.length != 5) {
+                return null;
+            }
+            return new Ticket(new ShowKey(Long.valueOf(parts[0]), LocalDateTime.parse(parts[1])),
+                    Long.parseLong(parts[2]), Long.parseLong(parts[3]), parts[4]);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package nz.ac.auckland.concert.service.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import javax.ws.rs.core.NewCookie;
+
+import org.junit.Test;
+
+/**
+ * Tests for TokenIndex.
+ *
+ */
+public class TokenIndexTest {
+
+	@Test
+	public void testIssuedTokenIsAccepted() {
+		TokenIndex index = new TokenIndex(60);
+		index.put(new NewCookie("clientId", "token"), "alice");
+
+		assertEquals("alice", index.getUsername("token"));
+		assertNull(index.getUsername("other"));
+	}
+
+	@Test
+	public void testClearedTokenIsRejected() {
+		TokenIndex index = new TokenIndex(60);
+		index.put(new NewCookie("clientId", "token"), "alice");
+
+		index.clear();
+
+		assertNull(index.getUsername("token"));
+	}
+}
@@ -0,0 +1,94 @@
+package nz.ac.auckland.concert.service.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Base64;
+
+import org.junit.Test;
+
+/**
+ * Tests for TokenSigner, using signers with known keys.
+ *
+ */
+public class TokenSignerTest {
+
+	private static final String KEY_1 = "k1:" + Base64.getEncoder().encodeToString(new byte[32]);
+	private static final String KEY_2 = "k2:" + Base64.getEncoder().encodeToString(new byte[] { 1, 2, 3, 4 });
+
+	@Test
+	public void testSignedTokenIsAccepted() {
+		TokenSigner signer = new TokenSigner(KEY_1, 60);
+
+		assertEquals("alice", signer.verify(signer.sign("alice")));
+		assertEquals("a;b", signer.verify("purpose", signer.sign("purpose", "a;b", inSeconds(60))));
+	}
+
+	@Test
+	public void testTamperedTokenIsRejected() {
+		TokenSigner signer = new TokenSigner(KEY_1, 60);
+		String[] parts = signer.sign("alice").split("\\.");
+
+		String subject = Base64.getUrlEncoder().withoutPadding().encodeToString("bob".getBytes());
+		assertNull(signer.verify(String.join(".", subject, parts[1], parts[2], parts[3])));
+
+		String expiry = String.valueOf(Long.parseLong(parts[1]) + 3600);
+		assertNull(signer.verify(String.join(".", parts[0], expiry, parts[2], parts[3])));
+
+		assertNull(signer.verify(String.join(".", parts[0], parts[1], parts[2], parts[3] + "A")));
+		assertNull(signer.verify(String.join(".", parts[0], parts[1], parts[2])));
+		assertNull(signer.verify("not a token"));
+	}
+
+	@Test
+	public void testTokenForAnotherPurposeIsRejected() {
+		TokenSigner signer = new TokenSigner(KEY_1, 60);
+
+		assertNull(signer.verify("seat-hold", signer.sign("alice")));
+		assertNull(signer.verify(signer.sign("seat-hold", "alice", inSeconds(60))));
+	}
+
+	@Test
+	public void testTokenFromAnotherSignerIsRejected() {
+		TokenSigner signer = new TokenSigner(KEY_1, 60);
+
+		// Same key id, different secret
+		TokenSigner foreign = new TokenSigner("k1:" + Base64.getEncoder().encodeToString(new byte[] { 9 }), 60);
+		assertNull(signer.verify(foreign.sign("alice")));
+
+		// Unknown key id
+		assertNull(signer.verify(new TokenSigner(KEY_2, 60).sign("alice")));
+	}
+
+	@Test
+	public void testExpiredTokenIsRejected() {
+		TokenSigner signer = new TokenSigner(KEY_1, 60);
+
+		assertNull(signer.verify("purpose", signer.sign("purpose", "alice", inSeconds(-1))));
+	}
+
+	@Test
+	public void testRotatedKeys() {
+		TokenSigner signer = new TokenSigner(KEY_1, 60);
+		String oldToken = signer.sign("alice");
+
+		signer.rotate("k2", new byte[] { 1, 2, 3, 4 });
+		String newToken = signer.sign("alice");
+		assertEquals("alice", signer.verify(oldToken));
+		assertEquals("alice", signer.verify(newToken));
+		assertEquals("alice", new TokenSigner(KEY_2, 60).verify(newToken));
+
+		signer.retire("k1");
+		assertNull(signer.verify(oldToken));
+		assertEquals("alice", signer.verify(newToken));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCurrentKeyCannotBeRetired() {
+		new TokenSigner(KEY_1, 60).retire("k1");
+	}
+
+	private static long inSeconds(long seconds) {
+		return System.currentTimeMillis() / 1000 + seconds;
+	}
+}
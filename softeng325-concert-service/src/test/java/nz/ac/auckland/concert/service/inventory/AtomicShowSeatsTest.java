@@ -0,0 +1,110 @@
+package nz.ac.auckland.concert.service.inventory;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import nz.ac.auckland.concert.common.dto.SeatDTO;
+import nz.ac.auckland.concert.common.types.PriceBand;
+import nz.ac.auckland.concert.common.types.SeatAllocation;
+
+import org.junit.Test;
+
+/**
+ * Tests AtomicShowSeats under concurrent reservations. Unlike the other seat
+ * engines, AtomicShowSeats isn't run through ShowSequencer, so threads here
+ * call the show directly.
+ *
+ */
+public class AtomicShowSeatsTest {
+
+	private static final int THREADS = 8;
+
+	@Test
+	public void testConcurrentReservationsNeverShareSeats() throws Exception {
+		for (PriceBand band : PriceBand.values()) {
+			AtomicShowSeats show = new AtomicShowSeats();
+			List<SeatDTO> reserved = reserveUntilFull(show, band);
+
+			Set<SeatDTO> distinct = new HashSet<>(reserved);
+			assertEquals("Seats reserved more than once in " + band, reserved.size(), distinct.size());
+			assertEquals(SeatLayout.getNumberOfSeats(band), distinct.size());
+			assertEquals(0, show.getNumberOfAvailableSeats(band));
+		}
+	}
+
+	@Test
+	public void testConcurrentReleasesAndReservationsNeverShareSeats() throws Exception {
+		PriceBand band = PriceBand.PriceBandB;
+		AtomicShowSeats show = new AtomicShowSeats();
+		LocalDateTime expiryDate = LocalDateTime.now().plusMinutes(5);
+
+		// Half the seats are reserved and then given back while the other
+		// threads compete for them.
+		long holdId = ShowSeats.newHoldId();
+		Set<SeatDTO> released = show.reserve(SeatLayout.getNumberOfSeats(band) / 2, band, SeatAllocation.Any,
+				holdId, expiryDate);
+		ExecutorService releaser = Executors.newSingleThreadExecutor();
+		Future<?> release = releaser.submit(() -> {
+			for (SeatDTO seat : released) {
+				show.release(Collections.singleton(seat), holdId);
+			}
+		});
+		List<SeatDTO> reserved = reserveUntilFull(show, band);
+		release.get();
+		releaser.shutdown();
+		reserved.addAll(reserveUntilFull(show, band));
+
+		assertEquals(reserved.size(), new HashSet<>(reserved).size());
+		assertEquals(SeatLayout.getNumberOfSeats(band), reserved.size());
+	}
+
+	private static List<SeatDTO> reserveUntilFull(ShowSeats show, PriceBand band) throws Exception {
+		LocalDateTime expiryDate = LocalDateTime.now().plusMinutes(5);
+		SeatAllocation[] allocations = SeatAllocation.values();
+
+		Callable<List<SeatDTO>> reserver = () -> {
+			List<SeatDTO> seats = new ArrayList<>();
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			int failures = 0;
+			while (failures < 20) {
+				int numberOfSeats = failures == 0 ? 1 + random.nextInt(4) : 1;
+				SeatAllocation allocation = allocations[random.nextInt(allocations.length)];
+				Set<SeatDTO> claimed = show.reserve(numberOfSeats, band, allocation, ShowSeats.newHoldId(),
+						expiryDate);
+				if (claimed.isEmpty()) {
+					failures++;
+				} else {
+					assertEquals(numberOfSeats, claimed.size());
+					seats.addAll(claimed);
+				}
+			}
+			return seats;
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<List<SeatDTO>>> results = new ArrayList<>();
+			for (int i = 0; i < THREADS; i++) {
+				results.add(executor.submit(reserver));
+			}
+			List<SeatDTO> reserved = new ArrayList<>();
+			for (Future<List<SeatDTO>> result : results) {
+				reserved.addAll(result.get());
+			}
+			return reserved;
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
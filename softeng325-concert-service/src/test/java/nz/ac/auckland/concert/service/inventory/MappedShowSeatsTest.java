@@ -0,0 +1,155 @@
+package nz.ac.auckland.concert.service.inventory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import nz.ac.auckland.concert.common.dto.SeatDTO;
+import nz.ac.auckland.concert.common.types.PriceBand;
+import nz.ac.auckland.concert.common.types.SeatAllocation;
+import nz.ac.auckland.concert.service.domain.jpa.SeatConverter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests MappedShowSeats shared between processes. A process can only hold
+ * one lock on a file at a time, so concurrent claims are made from separate
+ * JVMs, each running this class's main() method.
+ *
+ */
+public class MappedShowSeatsTest {
+
+	private static final int PROCESSES = 3;
+	private static final PriceBand BAND = PriceBand.PriceBandC;
+	private static final ShowKey SHOW = new ShowKey(1L, LocalDateTime.of(2017, 2, 24, 17, 0));
+
+	@Rule
+	public TemporaryFolder _folder = new TemporaryFolder();
+
+	/**
+	 * Reserves seats one or two at a time until the show is full, and prints
+	 * the code of each seat reserved.
+	 * @param args the directory holding the seat file
+	 */
+	public static void main(String[] args) {
+		MappedShowSeats show = MappedShowSeats.open(new File(args[0]), SHOW);
+		LocalDateTime expiryDate = LocalDateTime.now().plusMinutes(5);
+		int numberOfSeats = 2;
+		while (numberOfSeats > 0) {
+			Set<SeatDTO> seats = show.reserve(numberOfSeats, BAND, SeatAllocation.Any, ShowSeats.newHoldId(),
+					expiryDate);
+			if (seats.isEmpty()) {
+				numberOfSeats--;
+			}
+			for (SeatDTO seat : seats) {
+				System.out.println(SeatConverter.toCode(seat.getRow(), seat.getNumber().intValue()));
+			}
+		}
+		show.dispose();
+	}
+
+	@Test
+	public void testConcurrentProcessesNeverShareSeats() throws Exception {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		String classPath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+
+		List<Process> processes = new ArrayList<>();
+		for (int i = 0; i < PROCESSES; i++) {
+			processes.add(new ProcessBuilder(java, "-cp", classPath, MappedShowSeatsTest.class.getName(),
+					_folder.getRoot().getPath()).redirectError(ProcessBuilder.Redirect.INHERIT).start());
+		}
+
+		List<Integer> reserved = new ArrayList<>();
+		for (Process process : processes) {
+			reserved.addAll(readSeatCodes(process));
+			assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+			assertEquals(0, process.exitValue());
+		}
+
+		assertEquals(reserved.size(), new HashSet<>(reserved).size());
+		assertEquals(SeatLayout.getNumberOfSeats(BAND), reserved.size());
+	}
+
+	@Test
+	public void testLoadingInAnotherProcessDoesNotUnbookSeats() {
+		MappedShowSeats show = MappedShowSeats.open(_folder.getRoot(), SHOW);
+		LocalDateTime expiryDate = LocalDateTime.now().minusSeconds(1).truncatedTo(ChronoUnit.MILLIS);
+		Set<SeatDTO> seats = show.reserve(2, BAND, SeatAllocation.Any, 1, expiryDate);
+		assertTrue(show.book(seats, 1, expiryDate));
+
+		// Another process loads the show while the booked reservation is
+		// still in the database, and then sees it expire.
+		MappedShowSeats other = MappedShowSeats.open(_folder.getRoot(), SHOW);
+		int[] seatCodes = new int[seats.size()];
+		int i = 0;
+		for (SeatDTO seat : seats) {
+			seatCodes[i++] = SeatConverter.toCode(seat.getRow(), seat.getNumber().intValue());
+		}
+		other.markBooked(seatCodes);
+		other.markReserved(seatCodes, 1, expiryDate);
+
+		int available = SeatLayout.getNumberOfSeats(BAND) - seats.size();
+		assertEquals(available, other.getNumberOfAvailableSeats(BAND));
+		assertEquals(available, show.getNumberOfAvailableSeats(BAND));
+
+		other.dispose();
+		show.dispose();
+	}
+
+	@Test
+	public void testReopenedFileKeepsSeats() {
+		MappedShowSeats show = MappedShowSeats.open(_folder.getRoot(), SHOW);
+		show.reserve(2, BAND, SeatAllocation.Any, 1, LocalDateTime.now().plusMinutes(5));
+		show.dispose();
+
+		MappedShowSeats reopened = MappedShowSeats.open(_folder.getRoot(), SHOW);
+		assertEquals(SeatLayout.getNumberOfSeats(BAND) - 2, reopened.getNumberOfAvailableSeats(BAND));
+		reopened.dispose();
+	}
+
+	@Test
+	public void testFileWithoutHeaderIsReset() throws IOException {
+		MappedShowSeats show = MappedShowSeats.open(_folder.getRoot(), SHOW);
+		show.reserve(2, BAND, SeatAllocation.Any, 1, LocalDateTime.now().plusMinutes(5));
+		show.dispose();
+
+		// Overwrite the header, as if the file had been written with another
+		// layout.
+		File[] files = _folder.getRoot().listFiles();
+		assertEquals(1, files.length);
+		try (RandomAccessFile file = new RandomAccessFile(files[0], "rw")) {
+			file.writeLong(0);
+		}
+
+		MappedShowSeats reopened = MappedShowSeats.open(_folder.getRoot(), SHOW);
+		assertEquals(SeatLayout.getNumberOfSeats(BAND), reopened.getNumberOfAvailableSeats(BAND));
+		reopened.dispose();
+	}
+
+	private static List<Integer> readSeatCodes(Process process) throws IOException {
+		List<Integer> seatCodes = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				seatCodes.add(Integer.valueOf(line.trim()));
+			}
+		}
+		return seatCodes;
+	}
+}
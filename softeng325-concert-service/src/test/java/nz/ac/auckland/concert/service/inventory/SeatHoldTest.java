@@ -0,0 +1,105 @@
+package nz.ac.auckland.concert.service.inventory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+
+import nz.ac.auckland.concert.common.dto.ReservationRequestDTO;
+import nz.ac.auckland.concert.common.dto.SeatDTO;
+import nz.ac.auckland.concert.common.types.PriceBand;
+import nz.ac.auckland.concert.common.types.SeatNumber;
+import nz.ac.auckland.concert.common.types.SeatRow;
+import nz.ac.auckland.concert.service.auth.TokenSigner;
+
+import org.junit.Test;
+
+/**
+ * Tests that SeatHold only accepts hold tokens it issued, unaltered, for the
+ * user and hold they were issued for.
+ *
+ */
+public class SeatHoldTest {
+
+	private static final LocalDateTime DATE = LocalDateTime.of(2017, 2, 24, 17, 0);
+
+	@Test
+	public void testIssuedHoldIsAccepted() {
+		LocalDateTime expiryDate = expiry();
+		Set<SeatDTO> seats = seats();
+		String token = issue("alice", seats, expiryDate);
+
+		SeatHold hold = SeatHold.verify(token);
+
+		assertNotNull(hold);
+		assertEquals("alice", hold.getUsername());
+		assertEquals(Long.valueOf(1L), hold.getConcertId());
+		assertEquals(DATE, hold.getDate());
+		assertEquals(PriceBand.PriceBandA, hold.getSeatType());
+		assertEquals(expiryDate, hold.getExpiryDate());
+		assertEquals(seats, hold.getSeats());
+	}
+
+	@Test
+	public void testUsernameIsBoundToHold() {
+		assertEquals("alice", SeatHold.verify(issue("alice", seats(), expiry())).getUsername());
+		assertEquals("bob;eve", SeatHold.verify(issue("bob;eve", seats(), expiry())).getUsername());
+	}
+
+	@Test
+	public void testTamperedHoldIsRejected() {
+		String token = issue("alice", seats(), expiry());
+		String[] parts = token.split("\\.");
+
+		// Replace the subject with one naming another user
+		String subject = new String(Base64.getUrlDecoder().decode(parts[0])).replace("alice", "bob");
+		parts[0] = Base64.getUrlEncoder().withoutPadding().encodeToString(subject.getBytes());
+
+		assertNull(SeatHold.verify(String.join(".", parts)));
+		assertNull(SeatHold.verify(token.substring(0, token.length() - 2)));
+	}
+
+	@Test
+	public void testTokenSignedForAnotherPurposeIsRejected() {
+		String subject = subjectOf(issue("alice", seats(), expiry()));
+		String token = TokenSigner.instance().sign("authentication", subject,
+				System.currentTimeMillis() / 1000 + 60);
+
+		assertNull(SeatHold.verify(token));
+		assertNull(SeatHold.verify(TokenSigner.instance().sign("alice")));
+	}
+
+	@Test
+	public void testExpiredHoldIsRejected() {
+		LocalDateTime expiryDate = LocalDateTime.now().minusSeconds(2).truncatedTo(ChronoUnit.MILLIS);
+		assertNull(SeatHold.verify(issue("alice", seats(), expiryDate)));
+	}
+
+	private static String issue(String username, Set<SeatDTO> seats, LocalDateTime expiryDate) {
+		ReservationRequestDTO request = new ReservationRequestDTO(seats.size(), PriceBand.PriceBandA, 1L, DATE);
+		return SeatHold.issue(ShowSeats.newHoldId(), request, username, seats, expiryDate, 60).getHoldToken();
+	}
+
+	private static Set<SeatDTO> seats() {
+		Set<SeatDTO> seats = new HashSet<>();
+		seats.add(new SeatDTO(SeatRow.A, new SeatNumber(1)));
+		seats.add(new SeatDTO(SeatRow.A, new SeatNumber(2)));
+		return seats;
+	}
+
+	private static LocalDateTime expiry() {
+		return LocalDateTime.now().plusMinutes(1).truncatedTo(ChronoUnit.MILLIS);
+	}
+
+	/**
+	 * Reads the subject of a token without checking it
+	 */
+	private static String subjectOf(String token) {
+		return new String(Base64.getUrlDecoder().decode(token.split("\\.")[0]));
+	}
+}
@@ -0,0 +1,172 @@
+package nz.ac.auckland.concert.service.inventory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import nz.ac.auckland.concert.common.dto.SeatDTO;
+import nz.ac.auckland.concert.common.types.PriceBand;
+import nz.ac.auckland.concert.common.types.SeatAllocation;
+import nz.ac.auckland.concert.service.domain.jpa.SeatConverter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Tests for the ShowSeats contract, run against every seat engine. Shows are
+ * used directly rather than through ShowSequencer, from a single thread.
+ *
+ */
+@RunWith(Parameterized.class)
+public class ShowSeatsTest {
+
+	private static final PriceBand BAND = PriceBand.PriceBandA;
+
+	@Parameters(name = "{0}")
+	public static Collection<Object[]> engines() {
+		return Arrays.asList(new Object[][] {
+			{ SeatEngine.Bitmap }, { SeatEngine.Atomic }, { SeatEngine.OffHeap }, { SeatEngine.Mapped }
+		});
+	}
+
+	@Rule
+	public TemporaryFolder _folder = new TemporaryFolder();
+
+	private final SeatEngine _engine;
+	private ShowSeats _show;
+
+	public ShowSeatsTest(SeatEngine engine) {
+		_engine = engine;
+	}
+
+	@Before
+	public void createShow() {
+		ShowKey key = new ShowKey(1L, LocalDateTime.of(2017, 2, 24, 17, 0));
+		_show = _engine == SeatEngine.Mapped ? MappedShowSeats.open(_folder.getRoot(), key) : _engine.createShow(key);
+	}
+
+	@After
+	public void disposeShow() {
+		_show.dispose();
+	}
+
+	@Test
+	public void testLoadedReservationDoesNotUnbookBookedSeat() {
+		int seatCode = seatCode(0);
+
+		// A confirmed reservation's seats are both booked and reserved in the
+		// database until the reservation is reaped.
+		_show.markBooked(new int[] { seatCode });
+		_show.markReserved(new int[] { seatCode }, 1, LocalDateTime.now().minusSeconds(1));
+
+		// Once the reservation has expired, the seat must still be taken.
+		int size = SeatLayout.getNumberOfSeats(BAND);
+		assertEquals(size - 1, _show.getNumberOfAvailableSeats(BAND));
+		assertEquals(size - 1, _show.reserve(size - 1, BAND, SeatAllocation.Any, 2, expiry(60)).size());
+		assertTrue(_show.reserve(1, BAND, SeatAllocation.Any, 3, expiry(60)).isEmpty());
+	}
+
+	@Test
+	public void testLoadedReservationDoesNotTakeOverReservedSeat() {
+		LocalDateTime expiryDate = expiry(60);
+		Set<SeatDTO> seats = _show.reserve(1, BAND, SeatAllocation.Any, 1, expiryDate);
+		SeatDTO seat = seats.iterator().next();
+		int seatCode = SeatConverter.toCode(seat.getRow(), seat.getNumber().intValue());
+
+		_show.markReserved(new int[] { seatCode }, 2, expiry(120));
+
+		assertFalse(_show.book(seats, 2, expiryDate));
+		assertTrue(_show.book(seats, 1, expiryDate));
+	}
+
+	@Test
+	public void testBookRequiresReservationsHold() {
+		LocalDateTime expiryDate = expiry(60);
+		Set<SeatDTO> seats = _show.reserve(2, BAND, SeatAllocation.Any, 1, expiryDate);
+
+		assertFalse(_show.book(seats, 2, expiryDate));
+		assertTrue(_show.book(seats, 1, expiryDate));
+		assertFalse(_show.book(seats, 1, expiryDate));
+	}
+
+	@Test
+	public void testBookRejectsSeatsHeldByReservationWithSameExpiry() {
+
+		// Reservations allocated in the same batch share an expiry date.
+		LocalDateTime expiryDate = expiry(60);
+		Set<SeatDTO> seats = _show.reserve(1, BAND, SeatAllocation.Any, 1, expiryDate);
+		Set<SeatDTO> others = _show.reserve(1, BAND, SeatAllocation.Any, 2, expiryDate);
+
+		Set<SeatDTO> both = new HashSet<>(seats);
+		both.addAll(others);
+		assertFalse(_show.book(both, 1, expiryDate));
+		assertTrue(_show.book(others, 2, expiryDate));
+	}
+
+	@Test
+	public void testUnbookRestoresReservation() {
+		LocalDateTime expiryDate = expiry(60);
+		Set<SeatDTO> seats = _show.reserve(2, BAND, SeatAllocation.Any, 1, expiryDate);
+		assertTrue(_show.book(seats, 1, expiryDate));
+
+		_show.unbook(seats, 1, expiryDate);
+
+		assertEquals(SeatLayout.getNumberOfSeats(BAND) - 2, _show.getNumberOfAvailableSeats(BAND));
+		assertTrue(_show.book(seats, 1, expiryDate));
+	}
+
+	@Test
+	public void testUnbookedSeatsAreFreedWhenReservationExpires() {
+		LocalDateTime expiryDate = LocalDateTime.now().minusSeconds(1).truncatedTo(ChronoUnit.MILLIS);
+		Set<SeatDTO> seats = _show.reserve(2, BAND, SeatAllocation.Any, 1, expiryDate);
+		assertTrue(_show.book(seats, 1, expiryDate));
+
+		_show.unbook(seats, 1, expiryDate);
+
+		assertEquals(SeatLayout.getNumberOfSeats(BAND), _show.getNumberOfAvailableSeats(BAND));
+	}
+
+	@Test
+	public void testReleaseLeavesBookedSeats() {
+		LocalDateTime expiryDate = expiry(60);
+		Set<SeatDTO> seats = _show.reserve(2, BAND, SeatAllocation.Any, 1, expiryDate);
+		assertTrue(_show.book(seats, 1, expiryDate));
+
+		_show.release(seats, 1);
+
+		assertEquals(SeatLayout.getNumberOfSeats(BAND) - 2, _show.getNumberOfAvailableSeats(BAND));
+	}
+
+	@Test
+	public void testReleaseLeavesSeatsHeldByAnotherReservation() {
+		LocalDateTime expiryDate = expiry(60);
+		Set<SeatDTO> seats = _show.reserve(2, BAND, SeatAllocation.Any, 1, expiryDate);
+
+		_show.release(seats, 2);
+
+		assertEquals(SeatLayout.getNumberOfSeats(BAND) - 2, _show.getNumberOfAvailableSeats(BAND));
+		assertTrue(_show.book(seats, 1, expiryDate));
+	}
+
+	private static int seatCode(int slot) {
+		SeatDTO seat = SeatLayout.getSeat(BAND, slot);
+		return SeatConverter.toCode(seat.getRow(), seat.getNumber().intValue());
+	}
+
+	private static LocalDateTime expiry(int seconds) {
+		return LocalDateTime.now().plusSeconds(seconds).truncatedTo(ChronoUnit.MILLIS);
+	}
+}
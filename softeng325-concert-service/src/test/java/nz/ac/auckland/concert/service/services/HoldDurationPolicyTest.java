@@ -0,0 +1,82 @@
+package nz.ac.auckland.concert.service.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDateTime;
+
+import nz.ac.auckland.concert.service.inventory.ShowKey;
+
+import org.junit.Test;
+
+/**
+ * Tests for HoldDurationPolicy. Each test uses its own policy, holding seats
+ * for between 2 and 60 seconds and counting a show as busy at 10 requests per
+ * second. The half-life is long enough that counts don't decay noticeably
+ * while a test runs.
+ *
+ */
+public class HoldDurationPolicyTest {
+
+	private static final int MIN_SECONDS = 2;
+	private static final int MAX_SECONDS = 60;
+
+	private static final ShowKey SHOW = new ShowKey(1L, LocalDateTime.of(2017, 2, 24, 17, 0));
+	private static final ShowKey OTHER_SHOW = new ShowKey(1L, LocalDateTime.of(2017, 2, 25, 17, 0));
+
+	private final HoldDurationPolicy _policy = new HoldDurationPolicy(MIN_SECONDS, MAX_SECONDS, 10, 3600);
+
+	@Test
+	public void testQuietShowHoldsForLongest() {
+		assertEquals(MAX_SECONDS, _policy.getHoldSeconds(SHOW));
+
+		_policy.requested(SHOW);
+		_policy.held(SHOW);
+		assertTrue(_policy.getHoldSeconds(SHOW) >= MAX_SECONDS - 1);
+	}
+
+	@Test
+	public void testRushOfUnconfirmedHoldsHoldsForShortest() {
+		rush(SHOW, 0);
+
+		assertEquals(MIN_SECONDS, _policy.getHoldSeconds(SHOW));
+		assertEquals(MAX_SECONDS, _policy.getHoldSeconds(OTHER_SHOW));
+	}
+
+	@Test
+	public void testRushOfConfirmedHoldsHoldsForLongest() {
+		rush(SHOW, 1);
+
+		assertEquals(MAX_SECONDS, _policy.getHoldSeconds(SHOW));
+	}
+
+	@Test
+	public void testHoldShortensWithShareOfUnconfirmedHolds() {
+		rush(SHOW, 0.5);
+
+		int holdSeconds = _policy.getHoldSeconds(SHOW);
+		assertTrue(holdSeconds > MIN_SECONDS && holdSeconds < MAX_SECONDS);
+		assertEquals((MIN_SECONDS + MAX_SECONDS) / 2.0, holdSeconds, 2);
+	}
+
+	@Test
+	public void testMinimumIsNeverAboveMaximum() {
+		HoldDurationPolicy policy = new HoldDurationPolicy(MAX_SECONDS, MIN_SECONDS, 10, 3600);
+		assertEquals(MIN_SECONDS, policy.getHoldSeconds(SHOW));
+	}
+
+	/**
+	 * Records a burst of requests for a show, well above the busy rate, every
+	 * one of which is held and the given share of which are booked
+	 */
+	private void rush(ShowKey show, double bookedShare) {
+		int requests = 100000;
+		for (int i = 0; i < requests; i++) {
+			_policy.requested(show);
+			_policy.held(show);
+			if (i < requests * bookedShare) {
+				_policy.booked(show);
+			}
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package nz.ac.auckland.concert.service.waitingroom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDateTime;
+
+import nz.ac.auckland.concert.common.dto.QueuePositionDTO;
+import nz.ac.auckland.concert.service.inventory.ShowKey;
+
+import org.junit.Test;
+
+/**
+ * Tests for WaitingRoom. Each test uses its own waiting room, admitting
+ * positions at a known rate.
+ *
+ */
+public class WaitingRoomTest {
+
+	private static final ShowKey SHOW = new ShowKey(1L, LocalDateTime.of(2017, 2, 24, 17, 0));
+	private static final ShowKey OTHER_SHOW = new ShowKey(1L, LocalDateTime.of(2017, 2, 25, 17, 0));
+
+	private static final int ADMISSIONS_PER_SECOND = 10;
+	private static final long TOKEN_TTL_SECONDS = 60;
+
+	@Test
+	public void testEachUserHasOnePosition() {
+		WaitingRoom room = new WaitingRoom(ADMISSIONS_PER_SECOND, 1, TOKEN_TTL_SECONDS, 60);
+
+		QueuePositionDTO alice = room.join(SHOW, "alice");
+		QueuePositionDTO bob = room.join(SHOW, "bob");
+		QueuePositionDTO aliceAgain = room.join(SHOW, "alice");
+
+		assertEquals(1, alice.getPosition());
+		assertEquals(2, bob.getPosition());
+		assertEquals(alice.getPosition(), aliceAgain.getPosition());
+		assertEquals(1, room.join(OTHER_SHOW, "bob").getPosition());
+	}
+
+	@Test
+	public void testPositionsAreAdmittedInOrder() throws InterruptedException {
+		WaitingRoom room = new WaitingRoom(ADMISSIONS_PER_SECOND, 1, TOKEN_TTL_SECONDS, 60);
+		String[] tokens = new String[20];
+		for (int i = 0; i < tokens.length; i++) {
+			tokens[i] = room.join(SHOW, "user" + i).getToken();
+		}
+
+		// Whenever a position has been admitted, every position before it
+		// must have been too.
+		long deadline = System.currentTimeMillis() + 10000;
+		boolean lastAdmitted = false;
+		while (!lastAdmitted && System.currentTimeMillis() < deadline) {
+			boolean laterAdmitted = false;
+			for (int i = tokens.length - 1; i >= 0; i--) {
+				boolean admitted = room.isAdmitted(tokens[i], SHOW, "user" + i);
+				assertFalse("Position " + (i + 1) + " admitted after a later one", laterAdmitted && !admitted);
+				laterAdmitted |= admitted;
+			}
+			lastAdmitted = room.isAdmitted(tokens[tokens.length - 1], SHOW, "user" + (tokens.length - 1));
+			Thread.sleep(20);
+		}
+		assertTrue(lastAdmitted);
+	}
+
+	@Test
+	public void testTokenIsOnlyAcceptedForItsUserAndShow() throws InterruptedException {
+		WaitingRoom room = new WaitingRoom(ADMISSIONS_PER_SECOND, 1, TOKEN_TTL_SECONDS, 60);
+		String token = room.join(SHOW, "alice").getToken();
+		waitUntilAdmitted(room, token);
+
+		assertTrue(room.isAdmitted(token, SHOW, "alice"));
+		assertFalse(room.isAdmitted(token, SHOW, "bob"));
+		assertFalse(room.isAdmitted(token, OTHER_SHOW, "alice"));
+		assertFalse(room.isAdmitted(token + "x", SHOW, "alice"));
+	}
+
+	@Test
+	public void testAdmissionLapses() throws InterruptedException {
+		WaitingRoom room = new WaitingRoom(ADMISSIONS_PER_SECOND, 1, TOKEN_TTL_SECONDS, 1);
+		QueuePositionDTO first = room.join(SHOW, "alice");
+		waitUntilAdmitted(room, first.getToken());
+
+		Thread.sleep(2500);
+
+		assertFalse(room.isAdmitted(first.getToken(), SHOW, "alice"));
+		assertNull(room.getPosition(first.getToken()));
+		assertNotEquals(first.getPosition(), room.join(SHOW, "alice").getPosition());
+	}
+
+	@Test
+	public void testTokenIsNotAcceptedAfterClear() throws InterruptedException {
+		WaitingRoom room = new WaitingRoom(ADMISSIONS_PER_SECOND, 1, TOKEN_TTL_SECONDS, 60);
+		String token = room.join(SHOW, "alice").getToken();
+		waitUntilAdmitted(room, token);
+
+		// After the queue is emptied, the same user reaches the same position
+		// in the new queue.
+		room.clear();
+		QueuePositionDTO rejoined = room.join(SHOW, "alice");
+		waitUntilAdmitted(room, rejoined.getToken());
+		assertEquals(1, rejoined.getPosition());
+
+		assertFalse(room.isAdmitted(token, SHOW, "alice"));
+		assertNull(room.getPosition(token));
+		assertTrue(room.isAdmitted(rejoined.getToken(), SHOW, "alice"));
+	}
+
+	@Test
+	public void testDisabledWaitingRoomAdmitsEveryone() {
+		WaitingRoom room = new WaitingRoom(0, 1, TOKEN_TTL_SECONDS, 60);
+		String token = room.join(SHOW, "alice").getToken();
+
+		assertFalse(room.isEnabled());
+		assertTrue(room.isAdmitted(token, SHOW, "alice"));
+		assertTrue(room.getPosition(token).isAdmitted());
+	}
+
+	private static void waitUntilAdmitted(WaitingRoom room, String token) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!room.getPosition(token).isAdmitted() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertTrue(room.getPosition(token).isAdmitted());
+	}
+}